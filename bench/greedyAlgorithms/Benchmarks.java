@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the JMH command line (so it takes the same options) with the GC profiler, so that the
+ * allocation rate is reported next to the throughput.
+ * Run from the root of the project, where quijote.txt is.
+ *
+ * @author guisanpea
+ *
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		String[] options = Arrays.copyOf(new String[] {"-prof", "gc"}, args.length + 2);
+
+		System.arraycopy(args, 0, options, 2, args.length);
+		Main.main(options);
+	}
+}
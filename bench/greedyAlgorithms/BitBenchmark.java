@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The two tight loops of encoding: counting the frequencies of a block, and packing the
+ * codes of its symbols into a stream of bits, one symbol at a time or in bulk (codes of at
+ * most 16 bits with 12, two at a time, and of at most 32 bits otherwise); and reading the
+ * frequencies in bulk. The *Vector benchmarks run the same code in a JVM with the module
+ * of the Vector API, so that its paths are taken (see Vectors).
+ *
+ * @author guisanpea
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitBenchmark {
+
+	@Param({"uniform", "zipf", "quijote"})
+	public String input;
+
+	@Param({"0", "12"})
+	public int maxCodeLength;
+
+	private static final int Size = HuffmanCode.BlockSize;
+
+	private byte[] block;
+	private Histogram frequencies;
+	private CodeTable table;
+	private BitWriter bits;
+	private long[] totals;
+
+	@Setup
+	public void setup() throws IOException {
+		HuffmanCode code = new HuffmanCode();
+
+		block = Inputs.generate(input, Size);
+		frequencies = new Histogram(256);
+		frequencies.add(block, 0, Size);
+		code.setMaxCodeLength(maxCodeLength);
+		code.setCanonical(true);
+		code.generate(frequencies);
+		table = code.tableEncoding;
+		bits = new BitWriter(Channels.newChannel(OutputStream.nullOutputStream()));
+		totals = new long[256];
+	}
+
+	@Benchmark
+	public Histogram count(Throughput throughput) {
+		frequencies.add(block, 0, Size);
+		throughput.add(Size);
+		return frequencies;
+	}
+
+	@Benchmark
+	public BitWriter writeEach(Throughput throughput) throws IOException {
+		for (int i = 0; i < Size; i++)
+			bits.write(table.code(block[i] & 0xFF), table.length(block[i] & 0xFF));
+		throughput.add(Size);
+		return bits;
+	}
+
+	@Benchmark
+	public BitWriter writeBulk(Throughput throughput) throws IOException {
+		bits.write(table, block, 0, Size);
+		throughput.add(Size);
+		return bits;
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"--add-modules", Vectors.Module})
+	public BitWriter writeBulkVector(Throughput throughput) throws IOException {
+		bits.write(table, block, 0, Size);
+		throughput.add(Size);
+		return bits;
+	}
+
+	@Benchmark
+	public long[] frequencies() {
+		frequencies.frequencies(totals);
+		return totals;
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"--add-modules", Vectors.Module})
+	public long[] frequenciesVector() {
+		frequencies.frequencies(totals);
+		return totals;
+	}
+}
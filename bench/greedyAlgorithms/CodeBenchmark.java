@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of codes and reading and writing of headers, for alphabets from 2 to 256
+ * symbols with Zipf frequencies, and for headers with frequencies and with code lengths.
+ *
+ * @author guisanpea
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeBenchmark {
+
+	@Param({"2", "16", "64", "256"})
+	public int alphabet;
+
+	@Param({"0", "12"})
+	public int maxCodeLength;
+
+	@Param({"false", "true"})
+	public boolean canonical;
+
+	private Histogram frequencies;
+	private HuffmanCode code;
+	private ByteArrayOutputStream header;		// where headers are written
+	private BitWriter bits;
+	private byte[] written;						// a header with frequencies written beforehand
+	private byte[] lengths;						// a header with code lengths written beforehand
+	private int flags;
+
+	@Setup
+	public void setup() throws IOException {
+		frequencies = new Histogram(256);
+		frequencies.add(Inputs.zipf(1 << 20, alphabet, 1.0), 0, 1 << 20);
+		code = new HuffmanCode();
+		code.setMaxCodeLength(maxCodeLength);
+		code.setCanonical(canonical);
+		code.generate(frequencies);
+		flags = canonical ? HuffmanCode.Canonical : 0;
+		header = new ByteArrayOutputStream();
+		bits = new BitWriter(Channels.newChannel(header));
+		code.writeHeader(bits, 0, code.getMessageSize());	// frequencies
+		bits.flush();
+		written = header.toByteArray();
+		header.reset();
+		new CanonicalHeader(code.tableEncoding, code.getMessageSize()).write(bits);
+		bits.flush();
+		lengths = header.toByteArray();
+		header.reset();
+	}
+
+	@Benchmark
+	public HuffmanCode generate() {
+		code.generate(frequencies);
+		return code;
+	}
+
+	@Benchmark
+	public int writeHeader() throws IOException {
+		header.reset();
+		code.writeHeader(bits, flags, code.getMessageSize());
+		bits.flush();
+		return header.size();
+	}
+
+	@Benchmark
+	public Histogram readHeader() throws IOException {
+		return code.readHeader(ByteBuffer.wrap(written));
+	}
+
+	@Benchmark
+	public CanonicalHeader readCanonicalHeader() throws IOException {
+		return CanonicalHeader.read(new BitReader(ByteBuffer.wrap(lengths)));
+	}
+}
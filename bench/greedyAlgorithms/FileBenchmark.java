@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of files (and of strings, with the testing method that returns "0"s
+ * and "1"s), for inputs of several sizes and entropies, with unlimited codes and with codes
+ * of at most 12 bits, each block in a single bitstream or in interleaved ones, and with a
+ * single code or with a code per context (order-1 context models).
+ *
+ * @author guisanpea
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark {
+
+	@Param({"uniform", "zipf", "quijote"})
+	public String input;
+
+	@Param({"65536", "4194304"})
+	public int size;
+
+	@Param({"0", "12"})
+	public int maxCodeLength;
+
+	@Param({"false", "true"})
+	public boolean interleaved;
+
+	@Param({"false", "true"})
+	public boolean contextModeled;
+
+	private String original, encoded, decoded;	// files
+	private String text;						// input of the string benchmark
+	private HuffmanCode code;
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] data = Inputs.generate(input, size);
+		Path in = Inputs.file(data);
+
+		original = in.toString();
+		encoded = Inputs.output().toString();
+		decoded = Inputs.output().toString();
+		text = new String(data, 0, Math.min(size, 4096), StandardCharsets.ISO_8859_1);	// quadratic
+		code = new HuffmanCode();
+		code.setMaxCodeLength(maxCodeLength);
+		code.setInterleaved(interleaved);
+		code.setContextModeled(contextModeled);
+		code.encode(original, encoded);
+		code.decode(encoded, decoded);
+		if (!Arrays.equals(data, Files.readAllBytes(Paths.get(decoded))))	// measures a round trip
+			throw new RuntimeException("The " + input + " file is not identical after decoding");
+	}
+
+	@Benchmark
+	public HuffmanCode encodeFile(Throughput throughput) throws IOException {
+		code.encode(original, encoded);
+		throughput.add(size);
+		return code;
+	}
+
+	@Benchmark
+	public HuffmanCode decodeFile(Throughput throughput) throws IOException {
+		code.decode(encoded, decoded);
+		throughput.add(size);
+		return code;
+	}
+
+	@Benchmark
+	public String encodeString(Throughput throughput) {
+		String bits = code.encode(text);
+		throughput.add(text.length());
+		return bits;
+	}
+}
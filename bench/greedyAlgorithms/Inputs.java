@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Synthetic inputs of the benchmarks, with a fixed seed so that every run measures the same
+ * data:
+ * - uniform: random bytes (about 8 bits of entropy per byte)
+ * - zipf: bytes drawn from a Zipf distribution with exponent 1 (about 6 bits per byte)
+ * - quijote: quijote.txt repeated up to the size (plain text, about 4.5 bits per byte)
+ *
+ * @author guisanpea
+ *
+ */
+public class Inputs {
+	static final long Seed = 42;				// seed of the random inputs
+	static final String Text = "quijote.txt";	// sample text, from the root of the project
+
+	/**
+	 * Generates an input
+	 * @param kind is the kind of input: uniform, zipf or quijote
+	 * @param size is the number of bytes
+	 * @return the bytes of the input
+	 * @throws IOException if the sample text cannot be read
+	 */
+	public static byte[] generate(String kind, int size) throws IOException {
+		switch (kind) {
+			case "uniform":
+				return uniform(size, 256);
+			case "zipf":
+				return zipf(size, 256, 1.0);
+			case "quijote":
+				return repeat(Files.readAllBytes(Paths.get(Text)), size);
+			default:
+				throw new IllegalArgumentException("Unknown input: " + kind);
+		}
+	}
+
+	/**
+	 * Generates random bytes with the same probability, out of an alphabet
+	 * @param size is the number of bytes
+	 * @param alphabet is the number of symbols (from 0 to alphabet-1)
+	 * @return the bytes
+	 */
+	public static byte[] uniform(int size, int alphabet) {
+		Random random = new Random(Seed);
+		byte[] data = new byte[size];
+
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) random.nextInt(alphabet);
+
+		return data;
+	}
+
+	/**
+	 * Generates random bytes with a Zipf distribution (symbol k has probability proportional
+	 * to 1/(k+1)^s)
+	 * @param size is the number of bytes
+	 * @param alphabet is the number of symbols (from 0 to alphabet-1)
+	 * @param s is the exponent
+	 * @return the bytes
+	 */
+	public static byte[] zipf(int size, int alphabet, double s) {
+		Random random = new Random(Seed);
+		double[] cumulative = new double[alphabet];
+		byte[] data = new byte[size];
+		double sum = 0;
+
+		for (int k = 0; k < alphabet; k++)
+			cumulative[k] = sum += 1 / Math.pow(k + 1, s);
+		for (int i = 0; i < size; i++) {
+			double u = random.nextDouble() * sum;
+			int k = 0;
+			while (k < alphabet - 1 && cumulative[k] < u)
+				k++;
+			data[i] = (byte) k;
+		}
+
+		return data;
+	}
+
+	/**
+	 * Writes an input to a temporary file (deleted on exit)
+	 * @param data is the input
+	 * @return the path of the file
+	 * @throws IOException
+	 */
+	public static Path file(byte[] data) throws IOException {
+		Path path = Files.createTempFile("huffman-bench", ".in");
+
+		path.toFile().deleteOnExit();
+		Files.write(path, data);
+
+		return path;
+	}
+
+	/**
+	 * Returns a temporary file (deleted on exit) to write outputs to
+	 * @throws IOException
+	 */
+	public static Path output() throws IOException {
+		Path path = Files.createTempFile("huffman-bench", ".out");
+
+		path.toFile().deleteOnExit();
+
+		return path;
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Repeats some bytes up to a size
+	 */
+	private static byte[] repeat(byte[] sample, int size) {
+		byte[] data = new byte[size];
+
+		for (int i = 0; i < size; i += sample.length)
+			System.arraycopy(sample, 0, data, i, Math.min(sample.length, size - i));
+
+		return data;
+	}
+}
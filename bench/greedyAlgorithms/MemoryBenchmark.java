@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of messages in memory (e.g., payloads of RPCs) with a code trained
+ * on the same kind of input, into heap and direct buffers.
+ *
+ * @author guisanpea
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryBenchmark {
+
+	@Param({"uniform", "zipf", "quijote"})
+	public String input;
+
+	@Param({"1024", "65536"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean direct;
+
+	private byte[] message, encoded;
+	private ByteBuffer src, dst;
+	private HuffmanCode code;
+
+	@Setup
+	public void setup() throws IOException {
+		message = Inputs.generate(input, size);
+		code = new HuffmanCode();
+		code.setTable(TrainedTable.train(message, 0, size));
+		encoded = new byte[code.maxEncodedSize(size)];
+		int n = code.encode(message, 0, size, encoded);
+		src = direct ? ByteBuffer.allocateDirect(n) : ByteBuffer.allocate(n);
+		src.put(encoded, 0, n).flip();
+		dst = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+		code.decode(src, dst);
+		if (!dst.flip().equals(ByteBuffer.wrap(message)))				// measures a round trip
+			throw new RuntimeException("The " + input + " message is not identical after decoding");
+	}
+
+	@Benchmark
+	public int encode(Throughput throughput) {
+		throughput.add(size);
+		return code.encode(message, 0, size, encoded);
+	}
+
+	@Benchmark
+	public int decode(Throughput throughput) {
+		src.clear();
+		dst.clear();
+		throughput.add(size);
+		return code.decode(src, dst);
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counter of the megabytes processed by a benchmark, which JMH reports as a rate (MB/s)
+ * next to the score of the benchmark.
+ *
+ * @author guisanpea
+ *
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+	public double megabytes;			// processed in the current iteration
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		megabytes = 0;
+	}
+
+	/**
+	 * Counts some processed bytes
+	 * @param bytes is the number of bytes
+	 */
+	public void add(long bytes) {
+		megabytes += bytes / 1e6;
+	}
+}
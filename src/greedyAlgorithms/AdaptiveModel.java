@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+/**
+ * Model of an adaptive code, which the encoder and the decoder update in the same way after
+ * each block of symbols, so that no code has to be sent: it starts with every byte counted
+ * once (an 8-bit code), and the code is rebuilt (as an optimal canonical code) from the counts
+ * of all the blocks seen so far. Counts are halved when their total exceeds MaxTotal, so that
+ * the code follows changes in the data and encodings stay short enough for the bit writer.
+ *
+ * @author guisanpea
+ *
+ */
+public class AdaptiveModel {
+	static final int MaxTotal = 1 << 20;	// max. total count before halving counts
+
+	private final Histogram counts;			// counts of each byte (at least 1)
+	private long total;						// total count
+	private CodeTable table;				// the current code
+	private DecodeTable decoder;			// its decoding tables (null until needed)
+
+	/**
+	 * Creates the initial model
+	 */
+	public AdaptiveModel() {
+		counts = new Histogram(256);
+		for (int c = 0; c < 256; c++)
+			counts.set(c, 1);
+		total = 256;
+		rebuild();
+	}
+
+	/**
+	 * Returns the current code
+	 */
+	public CodeTable table() {
+		return table;
+	}
+
+	/**
+	 * Returns the decoding tables of the current code
+	 */
+	public DecodeTable decoder() {
+		if (decoder == null)
+			decoder = new DecodeTable(table);
+		return decoder;
+	}
+
+	/**
+	 * Counts a block of symbols and rebuilds the code
+	 * @param block is an array with the symbols
+	 * @param off is the position of the first symbol
+	 * @param len is the number of symbols
+	 */
+	public void update(byte[] block, int off, int len) {
+		counts.add(block, off, len);
+		total += len;
+		while (total > MaxTotal) {
+			total = 0;
+			for (int c = 0; c < 256; c++) {
+				long f = (counts.frequency(c) + 1) / 2;		// never drops to 0
+				counts.set(c, f);
+				total += f;
+			}
+		}
+		rebuild();
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	private void rebuild() {
+		table = new CodeTable(HuffmanLengths.lengths(counts));
+		decoder = null;
+	}
+}
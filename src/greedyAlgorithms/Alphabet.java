@@ -0,0 +1,250 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Alphabet of the symbols into which a message of bytes is split before encoding it. Every
+ * mode turns any sequence of bytes into symbols (in a primitive loop of its own) and back,
+ * and has at most 65536 symbols, so codes fit in a canonical header:
+ * - Bytes: each byte is a symbol (0..255), for arbitrary binary data
+ * - Pairs: each pair of bytes is a symbol (b0 << 8 | b1), the last one padded with a 0 if
+ *   the message has an odd number of bytes
+ * - Utf8: each UTF-8 character of the basic multilingual plane (encoded in 1 to 3 bytes) is
+ *   a symbol (its code point), and any other byte (not valid UTF-8, or part of a character
+ *   beyond the plane) is a symbol of its own, taken from the range of surrogates (which are
+ *   never code points of UTF-8 characters)
+ * A message is decoded until its number of bytes is reached, so padding is dropped.
+ *
+ * @author guisanpea
+ *
+ */
+public enum Alphabet {
+	Bytes(256) {
+		int parse(byte[] block, int off, int len, int[] symbols) {
+			for (int i = 0; i < len; i++)
+				symbols[i] = block[off + i] & 0xFF;
+			return len;
+		}
+
+		int pending(byte[] block, int off, int len) {
+			return 0;
+		}
+
+		int put(int symbol, byte[] block, int off) {
+			block[off] = (byte) symbol;
+			return 1;
+		}
+	},
+
+	Pairs(1 << 16) {
+		int parse(byte[] block, int off, int len, int[] symbols) {
+			int n = 0;
+			int end = off + len;
+			int i = off;
+
+			for (; i + 1 < end; i += 2)
+				symbols[n++] = (block[i] & 0xFF) << 8 | (block[i + 1] & 0xFF);
+			if (i < end)								// padded with a 0
+				symbols[n++] = (block[i] & 0xFF) << 8;
+
+			return n;
+		}
+
+		int pending(byte[] block, int off, int len) {
+			return len & 1;
+		}
+
+		int put(int symbol, byte[] block, int off) {
+			block[off] = (byte) (symbol >>> 8);
+			block[off + 1] = (byte) symbol;
+			return 2;
+		}
+	},
+
+	Utf8(1 << 16) {
+		int parse(byte[] block, int off, int len, int[] symbols) {
+			int n = 0;
+			int end = off + len;
+			int i = off;
+
+			while (i < end) {
+				int b = block[i] & 0xFF;
+				int c = -1;								// code point (-1 if not a character)
+				int l = 1;								// its number of bytes
+				if (b < 0x80)
+					c = b;
+				else if (b >= 0xC2 && b < 0xE0 && i + 1 < end && isContinuation(block[i + 1])) {
+					c = (b & 0x1F) << 6 | (block[i + 1] & 0x3F);
+					l = 2;
+				}
+				else if (b >= 0xE0 && b < 0xF0 && i + 2 < end &&
+						 isContinuation(block[i + 1]) && isContinuation(block[i + 2])) {
+					c = (b & 0x0F) << 12 | (block[i + 1] & 0x3F) << 6 | (block[i + 2] & 0x3F);
+					l = 3;
+					if (c < 0x800 || (c >= Raw && c < Raw + 0x800))	// overlong, or a surrogate
+						c = -1;
+				}
+				if (c < 0) {
+					c = Raw + b;
+					l = 1;
+				}
+				symbols[n++] = c;
+				i += l;
+			}
+
+			return n;
+		}
+
+		int pending(byte[] block, int off, int len) {
+			for (int k = 1; k <= Math.min(MaxBytes - 1, len); k++) {
+				int b = block[off + len - k] & 0xFF;
+				if (!isContinuation((byte) b))			// the last character starts here
+					return (b >= 0xC2 && b < 0xE0 && k < 2) || (b >= 0xE0 && b < 0xF0 && k < 3) ? k : 0;
+			}
+			return 0;
+		}
+
+		int put(int symbol, byte[] block, int off) {
+			if (symbol < 0x80) {
+				block[off] = (byte) symbol;
+				return 1;
+			}
+			if (symbol >= Raw && symbol < Raw + 256) {
+				block[off] = (byte) (symbol - Raw);
+				return 1;
+			}
+			if (symbol < 0x800) {
+				block[off] = (byte) (0xC0 | symbol >>> 6);
+				block[off + 1] = (byte) (0x80 | symbol & 0x3F);
+				return 2;
+			}
+			block[off] = (byte) (0xE0 | symbol >>> 12);
+			block[off + 1] = (byte) (0x80 | symbol >>> 6 & 0x3F);
+			block[off + 2] = (byte) (0x80 | symbol & 0x3F);
+			return 3;
+		}
+	};
+
+	static final int MaxBytes = 3;				// max. number of bytes of a symbol
+	static final int Raw = 0xD800;				// symbol of byte 0 when it is not a character
+
+	private final int size;						// number of possible symbols
+
+	private Alphabet(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Receives the symbols of a message, a block at a time
+	 */
+	public interface SymbolSink {
+		void accept(int[] symbols, int n) throws IOException;
+	}
+
+	/**
+	 * Receives the bytes of a message, a block at a time
+	 */
+	public interface ByteSink {
+		void accept(byte[] block, int n) throws IOException;
+	}
+
+	/**
+	 * Returns the number of possible symbols (0..size-1)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Splits a message into symbols, a block at a time (a symbol split between two blocks
+	 * or regions is kept for the next one)
+	 * @param regions are the buffers with the message, one after the other (not consumed)
+	 * @param block is a scratch array of bytes
+	 * @param symbols is a scratch array of symbols (as long as block)
+	 * @param sink receives the symbols of each block
+	 * @throws IOException
+	 */
+	public void split(ByteBuffer[] regions, byte[] block, int[] symbols, SymbolSink sink) throws IOException {
+		int carry = 0;								// bytes kept from the block before
+
+		for (ByteBuffer region : regions) {
+			ByteBuffer in = region.duplicate();
+			while (in.hasRemaining()) {
+				int n = Math.min(block.length - carry, in.remaining());
+				in.get(block, carry, n);
+				n += carry;
+				carry = pending(block, 0, n);
+				sink.accept(symbols, parse(block, 0, n - carry, symbols));
+				System.arraycopy(block, n - carry, block, 0, carry);
+			}
+		}
+		if (carry > 0)								// the message ends in the middle of a symbol
+			sink.accept(symbols, parse(block, 0, carry, symbols));
+	}
+
+	/**
+	 * Decodes a message, a block at a time
+	 * @param decoder is the decoding table
+	 * @param in is the input stream of bits
+	 * @param total is the number of bytes of the message
+	 * @param block is a scratch array of bytes
+	 * @param sink receives the bytes of each block
+	 * @throws IOException if the file is truncated, or the sink fails
+	 */
+	public void decode(DecodeTable decoder, BitReader in, long total, byte[] block, ByteSink sink) throws IOException {
+		int n = 0;
+
+		while (total > 0) {
+			n += put(decoder.decode(in), block, n);
+			if (n > block.length - MaxBytes || n >= total) {
+				int m = (int) Math.min(n, total);		// drops the padding
+				HuffmanCode.checkEnd(in);
+				sink.accept(block, m);
+				total -= m;
+				n = 0;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Splits some bytes into symbols
+	 * @param block is an array with the bytes
+	 * @param off is the position of the first byte
+	 * @param len is the number of bytes (the last symbol may be incomplete)
+	 * @param symbols is the array in which symbols are stored
+	 * @return the number of symbols
+	 */
+	abstract int parse(byte[] block, int off, int len, int[] symbols);
+
+	/**
+	 * Returns the number of bytes at the end of a block that may start a symbol completed
+	 * by the next block
+	 * @param block is an array with the bytes
+	 * @param off is the position of the first byte
+	 * @param len is the number of bytes
+	 */
+	abstract int pending(byte[] block, int off, int len);
+
+	/**
+	 * Stores the bytes of a symbol
+	 * @param symbol is the symbol
+	 * @param block is the array in which bytes are stored (with room for MaxBytes)
+	 * @param off is the position of the first byte
+	 * @return the number of bytes stored
+	 */
+	abstract int put(int symbol, byte[] block, int off);
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+}
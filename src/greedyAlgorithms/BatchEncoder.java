@@ -0,0 +1,338 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Encodes many (typically small) files concurrently, each into a file with the same name
+ * plus Extension, in the same directory or in a tree of directories like that of the inputs.
+ *
+ * Each file is read, encoded in memory and written by its own task. Reading and writing are
+ * blocking, so tasks run on virtual threads where the JVM has them (Java 21 on), or else on
+ * platform threads, with at most maxInFlight files being processed at a time (which also
+ * bounds the memory used). Encoding, in turn, is limited to cpuLimit tasks at a time, so
+ * that the reads and writes of some files overlap with the encoding of others.
+ *
+ * Usage: java greedyAlgorithms.BatchEncoder [-j cpuLimit] [-f maxInFlight] [-o outputDir]
+ *        (file | directory | @listOfFiles)...
+ *
+ * @author guisanpea
+ *
+ */
+public class BatchEncoder {
+	static final String Extension = ".huf";		// added to the name of encoded files
+	static final int DefaultInFlight = 256;		// default max. number of files at a time
+
+	private final int cpuLimit;					// max. number of files encoded at a time
+	private final int maxInFlight;				// max. number of files processed at a time
+	private final Supplier<HuffmanCode> codes;	// creates the encoder of each file
+
+	/**
+	 * Creates a batch encoder with the default settings of HuffmanCode
+	 * @param cpuLimit is the max. number of files encoded at a time
+	 */
+	public BatchEncoder(int cpuLimit) {
+		this(cpuLimit, DefaultInFlight, HuffmanCode::new);
+	}
+
+	/**
+	 * Creates a batch encoder
+	 * @param cpuLimit is the max. number of files encoded at a time
+	 * @param maxInFlight is the max. number of files being read, encoded or written at a time
+	 * @param codes creates the encoder of each file (e.g., with a pre-trained code set)
+	 * @throws RuntimeException if a limit is not positive
+	 */
+	public BatchEncoder(int cpuLimit, int maxInFlight, Supplier<HuffmanCode> codes) throws RuntimeException {
+		if (cpuLimit < 1 || maxInFlight < 1)
+			throw new RuntimeException("The limits of a batch encoder must be positive");
+		this.cpuLimit = cpuLimit;
+		this.maxInFlight = maxInFlight;
+		this.codes = codes;
+	}
+
+	/**
+	 * Encodes some files, each into a file in the same directory
+	 * @param inputs are the files
+	 * @return a report of the batch
+	 * @throws InterruptedException
+	 */
+	public Report encode(List<Path> inputs) throws InterruptedException {
+		return encode(inputs, null, null);
+	}
+
+	/**
+	 * Encodes some files. A file whose encoded file would be that of a file before it (e.g.,
+	 * files with the same name in different directories, written to an output directory by
+	 * their names only) is not encoded, and is reported as failed.
+	 * @param inputs are the files
+	 * @param base is the directory whose tree is replicated in the output directory (null to
+	 * write encoded files in the output directory by their names only)
+	 * @param outputDir is the output directory (null to write encoded files next to the inputs)
+	 * @return a report of the batch
+	 * @throws InterruptedException
+	 */
+	public Report encode(List<Path> inputs, Path base, Path outputDir) throws InterruptedException {
+		Semaphore cpu = new Semaphore(cpuLimit);
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		long[] latencies = new long[inputs.size()];	// nanoseconds taken by each file encoded (or -1)
+		AtomicLong bytesIn = new AtomicLong(), bytesOut = new AtomicLong();
+		Queue<String> errors = new ConcurrentLinkedQueue<String>();
+		Map<Path, Path> outputs = new HashMap<Path, Path>();	// input of each encoded file
+		ExecutorService executor = newExecutor();
+		long start = System.nanoTime();
+
+		Arrays.fill(latencies, -1);
+		for (int i = 0; i < inputs.size(); i++) {
+			int file = i;
+			Path input = inputs.get(i);
+			Path output = output(input, base, outputDir);
+			Path previous = outputs.putIfAbsent(output.toAbsolutePath().normalize(), input);
+			if (previous != null) {
+				errors.add(input + ": its encoded file " + output + " is that of " + previous);
+				continue;
+			}
+			inFlight.acquire();						// bounds the files in memory
+			executor.execute(() -> {
+				long t = System.nanoTime();
+				try {
+					byte[] data = Files.readAllBytes(input);
+					ByteArrayOutputStream encoded = new ByteArrayOutputStream(data.length / 2 + 64);
+					cpu.acquire();
+					try {
+						codes.get().encode(new ByteBuffer[] {ByteBuffer.wrap(data)}, data.length,
+										   Channels.newChannel(encoded));
+					} finally {
+						cpu.release();
+					}
+					if (output.getParent() != null)
+						Files.createDirectories(output.getParent());
+					try (OutputStream out = Files.newOutputStream(output)) {
+						encoded.writeTo(out);
+					}
+					bytesIn.addAndGet(data.length);
+					bytesOut.addAndGet(encoded.size());
+					latencies[file] = System.nanoTime() - t;
+				} catch (IOException | RuntimeException e) {
+					errors.add(input + ": " + e);
+				} catch (InterruptedException e) {
+					errors.add(input + ": " + e);
+					Thread.currentThread().interrupt();
+				} finally {
+					inFlight.release();
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+		return new Report(Arrays.stream(latencies).filter(t -> t >= 0).toArray(), bytesIn.get(), bytesOut.get(),
+						  System.nanoTime() - start, new ArrayList<String>(errors));
+	}
+
+	/**
+	 * Lists the files to be encoded: a directory stands for all the files in its tree, and a
+	 * name that starts with '@' for the files listed in it (one per line)
+	 * @param names are the names of files, directories and lists of files
+	 * @return the files
+	 * @throws IOException
+	 */
+	public static List<Path> list(String... names) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+
+		for (String name : names) {
+			if (name.startsWith("@")) {
+				try (Stream<String> lines = Files.lines(Paths.get(name.substring(1)))) {
+					lines.filter(line -> !line.isBlank()).map(Paths::get).forEach(files::add);
+				}
+			}
+			else if (Files.isDirectory(Paths.get(name))) {
+				try (Stream<Path> tree = Files.walk(Paths.get(name))) {
+					files.addAll(tree.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+				}
+			}
+			else
+				files.add(Paths.get(name));
+		}
+
+		return files;
+	}
+
+	/**
+	 * Encodes the files given in the command line and prints a report
+	 * @param args are the options and the files (see the description of the class)
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int cpuLimit = Runtime.getRuntime().availableProcessors();
+		int maxInFlight = DefaultInFlight;
+		Path outputDir = null;
+		int i = 0;
+
+		for (; i < args.length - 1 && args[i].startsWith("-"); i += 2)
+			switch (args[i]) {
+				case "-j":
+					cpuLimit = Integer.parseInt(args[i + 1]);
+					break;
+				case "-f":
+					maxInFlight = Integer.parseInt(args[i + 1]);
+					break;
+				case "-o":
+					outputDir = Paths.get(args[i + 1]);
+					break;
+				default:
+					i = args.length;
+			}
+		if (i >= args.length) {
+			System.out.println("Usage: BatchEncoder [-j cpuLimit] [-f maxInFlight] [-o outputDir] (file | directory | @listOfFiles)...");
+			return;
+		}
+
+		String[] names = Arrays.copyOfRange(args, i, args.length);
+		Path base = (names.length == 1 && Files.isDirectory(Paths.get(names[0]))) ? Paths.get(names[0]) : null;
+		Report report = new BatchEncoder(cpuLimit, maxInFlight, HuffmanCode::new).encode(list(names), base, outputDir);
+		System.out.print(report);
+	}
+
+	/**
+	 * Summary of a batch: throughput and percentiles of the latency of each file
+	 */
+	public static class Report {
+		private final long[] latencies;			// nanoseconds taken by each file encoded, sorted
+		private final long bytesIn, bytesOut;	// size of the files before and after encoding
+		private final long elapsed;				// nanoseconds taken by the batch
+		private final List<String> errors;		// files that could not be encoded, and why
+
+		Report(long[] latencies, long bytesIn, long bytesOut, long elapsed, List<String> errors) {
+			this.latencies = latencies.clone();
+			Arrays.sort(this.latencies);
+			this.bytesIn = bytesIn;
+			this.bytesOut = bytesOut;
+			this.elapsed = elapsed;
+			this.errors = errors;
+		}
+
+		/**
+		 * Returns the number of files encoded (those that failed are not counted, see errors)
+		 */
+		public int files() {
+			return latencies.length;
+		}
+
+		/**
+		 * Returns the files that could not be encoded, and why
+		 */
+		public List<String> errors() {
+			return errors;
+		}
+
+		/**
+		 * Returns the number of bytes of the files encoded
+		 */
+		public long bytesIn() {
+			return bytesIn;
+		}
+
+		/**
+		 * Returns the number of bytes of the encoded files
+		 */
+		public long bytesOut() {
+			return bytesOut;
+		}
+
+		/**
+		 * Returns the throughput of the batch, in MB (of files encoded) per second
+		 */
+		public double throughput() {
+			return bytesIn / 1e6 / (elapsed / 1e9);
+		}
+
+		/**
+		 * Returns a percentile of the latency of each file encoded
+		 * @param p is the percentile (in [0..100])
+		 * @return the latency in nanoseconds (0 if no file was encoded)
+		 */
+		public long latency(double p) {
+			if (latencies.length == 0)
+				return 0;
+			int i = (int) Math.ceil(p / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(latencies.length - 1, i))];
+		}
+
+		public String toString() {
+			DecimalFormatSymbols symb = new DecimalFormatSymbols();
+			symb.setDecimalSeparator('.');
+			DecimalFormat f = new DecimalFormat("0.00", symb);
+			StringBuilder s = new StringBuilder();
+
+			s.append("Files:                   " + files() + " encoded (" + errors.size() + " failed)\n");
+			s.append("Bytes:                   " + bytesIn + " -> " + bytesOut + "\n");
+			s.append("Elapsed time:            " + f.format(elapsed / 1e6) + " ms\n");
+			s.append("Throughput:              " + f.format(throughput()) + " MB/s\n");
+			s.append("Latency per file:        p50 " + f.format(latency(50) / 1e6) + " ms, p90 " +
+					 f.format(latency(90) / 1e6) + " ms, p99 " + f.format(latency(99) / 1e6) + " ms, max " +
+					 f.format(latency(100) / 1e6) + " ms\n");
+			for (String error : errors)
+				s.append("Failed:                  " + error + "\n");
+
+			return s.toString();
+		}
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Returns the name of the encoded file of an input
+	 */
+	private static Path output(Path input, Path base, Path outputDir) {
+		String name = input.getFileName() + Extension;
+
+		if (outputDir == null)
+			return input.resolveSibling(name);
+		if (base == null)
+			return outputDir.resolve(name);
+		return outputDir.resolve(base.relativize(input)).resolveSibling(name);
+	}
+
+	/**
+	 * Creates an executor that runs each task on a new virtual thread (Java 21 on), or else on
+	 * platform threads that are reused
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
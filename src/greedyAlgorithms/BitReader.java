@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads a stream of bits (most significant bit of each byte first).
+ * Bits are kept left-aligned in a 64-bit word that is refilled with whole big-endian words
+ * from the input buffers, so that several bits can be peeked at once.
+ * Past the end of the input the stream is padded with "0"s.
+ * Words are read as big-endian whatever the byte order of the buffers.
+ *
+ * @author guisanpea
+ *
+ */
+public class BitReader {
+	private final ByteBuffer[] regions;		// input buffers, read one after the other
+	private int region;						// buffer being read
+	private ByteBuffer in;					// the buffer being read
+	private long bits;						// pending bits, left-aligned
+	private int count;						// number of pending bits
+	private int padding;					// number of pending bits past the end of the input
+
+	/**
+	 * Creates a reader of bits
+	 * @param regions are the input buffers (the first one positioned at the first bit)
+	 */
+	public BitReader(ByteBuffer... regions) {
+		this.regions = regions;
+		region = 0;
+		in = regions[0];
+		bits = 0;
+		count = 0;
+		padding = 0;
+	}
+
+	/**
+	 * Starts reading another buffer (after the buffers given, which are not read anymore),
+	 * so that the reader can be reused without allocating a new one
+	 * @param in is the buffer (positioned at the first bit)
+	 */
+	public void reset(ByteBuffer in) {
+		this.in = in;
+		region = regions.length - 1;
+		bits = 0;
+		count = 0;
+		padding = 0;
+	}
+
+	/**
+	 * Returns the next n bits without consuming them
+	 * @param n is the number of bits (1 <= n <= 56)
+	 * @return the bits as an unsigned int (first bit as MSB)
+	 */
+	public int peek(int n) {
+		if (count < n)
+			refill();
+		return (int) (bits >>> (64 - n));
+	}
+
+	/**
+	 * Consumes n bits (which must have been peeked before)
+	 * @param n is the number of bits
+	 */
+	public void skip(int n) {
+		bits <<= n;
+		count -= n;
+	}
+
+	/**
+	 * Returns whether bits past the end of the input have been consumed (i.e., the input is
+	 * shorter than what has been read from it, as in a truncated file)
+	 */
+	public boolean overrun() {
+		return count < padding;
+	}
+
+	/**
+	 * Skips the bits up to the next byte boundary and gives the whole bytes that were read
+	 * in advance back to the buffer being read, so that it is positioned right after the
+	 * bits consumed (e.g., after a header read bit by bit)
+	 */
+	public void align() {
+		int read = Math.max(0, count - padding);	// bits actually read from the buffer
+		in.position(in.position() - read / 8);
+		bits = 0;
+		count = 0;
+		padding = 0;
+	}
+
+	/**
+	 * Fills the word with as many whole bytes as possible
+	 */
+	private void refill() {
+		int p = in.position();
+
+		if (in.limit() - p >= 8) {				// fast path: a whole word is available.
+			int n = (64 - count) >>> 3;			// The bits of a partial byte after the last
+			long w = in.getLong(p);				// whole one are right and will be or-ed again
+			if (in.order() != ByteOrder.BIG_ENDIAN)
+				w = Long.reverseBytes(w);
+			bits |= w >>> count;
+			in.position(p + n);
+			count += n << 3;
+		}
+		else
+			while (count <= 56) {
+				while (!in.hasRemaining()) {
+					if (region == regions.length - 1) {		// end of file: pad with "0"s
+						padding += 64 - count;
+						count = 64;
+						return;
+					}
+					in = regions[++region];
+				}
+				bits |= (long) (in.get() & 0xFF) << (56 - count);
+				count += 8;
+			}
+	}
+}
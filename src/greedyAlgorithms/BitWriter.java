@@ -0,0 +1,276 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes a stream of bits (most significant bit of each byte first).
+ * Codes are packed into a 64-bit accumulator, which is spilled a whole byte at a time into
+ * a reusable block that is written to the output channel when full.
+ * Runs of symbols are packed in bulk (see write(CodeTable, byte[], int, int)), with the
+ * accumulator in local variables and spilled a 32-bit word at a time; when the Vector API
+ * paths are enabled (see Vectors), the encodings of pairs of symbols are looked up and
+ * joined VectorChunk symbols at a time by VectorKernels.pairs().
+ * Nothing is allocated after construction.
+ *
+ * @author guisanpea
+ *
+ */
+public class BitWriter {
+	static final int BlockSize = 1 << 16;	// number of bytes written to the output at a time
+	static final int MaxPairLength = 16;	// max. length of codes packed two at a time
+	static final int MaxWordLength = 32;	// max. length of codes packed in bulk
+	static final int VectorChunk = 512;		// symbols joined in pairs at a time by vectors
+
+	private static final VarHandle Words =	// big-endian 32-bit words of an array
+			MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final WritableByteChannel out;	// output channel
+	private final byte[] block;				// block of bytes waiting to be written
+	private final ByteBuffer view;			// the block as seen by the channel
+	private int pos;						// number of bytes in the block
+	private long drained;					// number of bytes already written to the channel
+	private long bits;						// pending bits, right-aligned
+	private int count;						// number of pending bits
+	private final long[] entries;			// (code, length) of each byte, for vectors
+	private CodeTable entriesOf;			// the code of the entries
+	private final int[] first, second;		// symbols of each pair of a chunk, for vectors
+	private final long[] joined;			// (code, length) of each pair of a chunk
+
+	/**
+	 * Creates a writer of bits
+	 * @param out is the output channel (already positioned after the header)
+	 */
+	public BitWriter(WritableByteChannel out) {
+		this.out = out;
+		this.block = new byte[BlockSize];
+		this.view = ByteBuffer.wrap(block);
+		pos = 0;
+		drained = 0;
+		bits = 0;
+		count = 0;
+		entries = Vectors.Enabled ? new long[256] : null;
+		first = Vectors.Enabled ? new int[VectorChunk / 2] : null;
+		second = Vectors.Enabled ? new int[VectorChunk / 2] : null;
+		joined = Vectors.Enabled ? new long[VectorChunk / 2] : null;
+	}
+
+	/**
+	 * Appends a code to the stream
+	 * @param code are the bits of the code (right-aligned)
+	 * @param length is the number of bits of the code (0 <= length <= 56)
+	 * @throws IOException
+	 */
+	public void write(long code, int length) throws IOException {
+		if (count + length > 64)
+			spill();
+		bits = (bits << length) | code;
+		count += length;
+	}
+
+	/**
+	 * Appends the encoding of some symbols to the stream. Codes of at most MaxPairLength bits
+	 * are packed two at a time, and the accumulator is spilled only when it holds a whole
+	 * 32-bit word, so the loop has a single branch per pair of symbols besides the check of
+	 * their encodings (codes of at most MaxWordLength bits are packed one at a time, and
+	 * longer ones with write(long, int)). With the Vector API paths, pairs are looked up and
+	 * joined a chunk at a time, and the loop just packs them
+	 * @param table is the encoding of each symbol
+	 * @param symbols is an array of bytes
+	 * @param off is the position of the first symbol
+	 * @param n is the number of symbols
+	 * @throws IOException
+	 * @throws RuntimeException if some symbol has no encoding in the table (the symbols
+	 * before it may have been written)
+	 */
+	public void write(CodeTable table, byte[] symbols, int off, int n) throws IOException {
+		int alphabet = table.alphabetSize();
+		int maxLength = table.maxLength();
+		int end = off + n;
+		int i = off;
+
+		if (maxLength > MaxWordLength) {
+			for (; i < end; i++) {
+				int s = symbols[i] & 0xFF;
+				int l = length(table, alphabet, s);
+				write(table.code(s), l);
+			}
+			return;
+		}
+
+		spill();									// leaves less than 8 bits pending
+		long acc = bits;
+		int k = count;
+		int p = pos;
+		final byte[] b = block;
+
+		if (maxLength <= MaxPairLength && Vectors.Enabled) {
+			if (entriesOf != table) {
+				VectorKernels.entries(table, entries);
+				entriesOf = table;
+			}
+			for (; i + VectorChunk <= end; i += VectorChunk) {
+				if (!VectorKernels.pairs(entries, symbols, i, VectorChunk / 2, first, second, joined))
+					break;							// the pair loop finds the missing symbol
+				for (int j = 0; j < VectorChunk / 2; j++) {
+					long e = joined[j];
+					int l = (int) (e & VectorKernels.LengthMask);
+					acc = acc << l | e >>> VectorKernels.LengthBits;
+					k += l;
+					if (k >= 32) {
+						if (p > BlockSize - 4) {
+							pos = p;
+							drain();
+							p = 0;
+						}
+						k -= 32;
+						Words.set(b, p, (int) (acc >>> k));
+						p += 4;
+					}
+				}
+			}
+		}
+		if (maxLength <= MaxPairLength)
+			for (; i + 2 <= end; i += 2) {			// k < 32 before, so at most 64 bits
+				int s = symbols[i] & 0xFF, t = symbols[i + 1] & 0xFF;
+				int ls = (s < alphabet) ? table.length(s) : -1;
+				int lt = (t < alphabet) ? table.length(t) : -1;
+				if ((ls | lt) < 0) {
+					bits = acc;
+					count = k;
+					pos = p;
+					length(table, alphabet, (ls < 0) ? s : t);	// throws
+				}
+				acc = (acc << ls | table.code(s)) << lt | table.code(t);
+				k += ls + lt;
+				if (k >= 32) {
+					if (p > BlockSize - 4) {
+						pos = p;
+						drain();
+						p = 0;
+					}
+					k -= 32;
+					Words.set(b, p, (int) (acc >>> k));
+					p += 4;
+				}
+			}
+		for (; i < end; i++) {
+			int s = symbols[i] & 0xFF;
+			int ls = (s < alphabet) ? table.length(s) : -1;
+			if (ls < 0) {
+				bits = acc;
+				count = k;
+				pos = p;
+				length(table, alphabet, s);			// throws
+			}
+			acc = acc << ls | table.code(s);
+			k += ls;
+			if (k >= 32) {
+				if (p > BlockSize - 4) {
+					pos = p;
+					drain();
+					p = 0;
+				}
+				k -= 32;
+				Words.set(b, p, (int) (acc >>> k));
+				p += 4;
+			}
+		}
+		bits = acc;
+		count = k;
+		pos = p;
+	}
+
+	/**
+	 * Appends whole bytes to the stream, which must be at a byte boundary
+	 * @param bytes is an array of bytes
+	 * @param off is the position of the first byte
+	 * @param len is the number of bytes
+	 * @throws IOException
+	 */
+	public void writeBytes(byte[] bytes, int off, int len) throws IOException {
+		spill();
+		assert count == 0 : "writeBytes requires the stream to be at a byte boundary";
+		if (len > BlockSize - pos) {		// big arrays go straight to the channel
+			drain();
+			ByteBuffer b = ByteBuffer.wrap(bytes, off, len);
+			while (b.hasRemaining())
+				out.write(b);
+			drained += len;
+		}
+		else {
+			System.arraycopy(bytes, off, block, pos, len);
+			pos += len;
+		}
+	}
+
+	/**
+	 * Returns the number of bits written so far
+	 */
+	public long position() {
+		return 8 * (drained + pos) + count;
+	}
+
+	/**
+	 * Writes whatever bits may remain (padding the last byte with "0"s) and empties the block
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		spill();
+		if (count > 0) {
+			block[pos++] = (byte) (bits << (8 - count));
+			count = 0;
+		}
+		drain();
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Returns the length of the encoding of a symbol
+	 * @throws RuntimeException if it has none
+	 */
+	private static int length(CodeTable table, int alphabet, int symbol) {
+		int l = (symbol < alphabet) ? table.length(symbol) : -1;
+
+		if (l < 0)
+			throw new RuntimeException("Symbol " + symbol + " has no encoding in the code");
+		return l;
+	}
+
+	/**
+	 * Moves every whole byte in the accumulator to the block
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		if (pos > BlockSize - 8)
+			drain();
+		while (count >= 8) {
+			count -= 8;
+			block[pos++] = (byte) (bits >>> count);
+		}
+	}
+
+	/**
+	 * Writes the block to the output channel
+	 * @throws IOException
+	 */
+	private void drain() throws IOException {
+		view.clear().limit(pos);
+		while (view.hasRemaining())
+			out.write(view);
+		drained += pos;
+		pos = 0;
+	}
+}
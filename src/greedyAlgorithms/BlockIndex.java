@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Index of the blocks of an encoded file: for each block, the position (in bits from the
+ * start of the encoded message) of its first code and the number of symbols it encodes.
+ * Blocks are decoded independently, so any block can be located from the position of a
+ * symbol in the original file and decoded on its own.
+ *
+ * It is stored as a footer after the message: the number of blocks (4 bytes), a pair
+ * (offset: 8 bytes, symbols: 4 bytes) per block, and finally the position of the footer in
+ * the file (8 bytes). All values are written from LSB to MSB, like the rest of the header.
+ * Blocks of a footer must have at most MaxSymbols symbols (those of encoders are much
+ * smaller), while the index of a file without a footer may have a single block of any size.
+ *
+ * @author guisanpea
+ *
+ */
+public class BlockIndex {
+	static final int EntrySize = 12;		// bytes per block in the footer
+	static final int TrailerSize = 8;		// bytes of the position of the footer
+	static final long MaxSymbols = Integer.MAX_VALUE;	// max. symbols of a block in a footer
+
+	private long[] offsets;					// position of each block (in bits)
+	private long[] symbols;					// number of symbols in each block
+	private long[] first;					// position in the original file of the first
+											// symbol of each block (plus the total at the end)
+	private int blocks;						// number of blocks
+	private long start;						// position of the message in the encoded file
+
+	/**
+	 * Creates an empty index
+	 * @param start is the position (in bytes) of the encoded message in the file
+	 */
+	public BlockIndex(long start) {
+		offsets = new long[16];
+		symbols = new long[16];
+		first = new long[17];
+		blocks = 0;
+		this.start = start;
+	}
+
+	/**
+	 * Adds a block at the end of the index
+	 * @param offset is the position of the block (in bits from the start of the message)
+	 * @param n is the number of symbols in the block
+	 */
+	public void add(long offset, long n) {
+		if (blocks == offsets.length) {
+			offsets = Arrays.copyOf(offsets, 2 * blocks);
+			symbols = Arrays.copyOf(symbols, 2 * blocks);
+			first = Arrays.copyOf(first, 2 * blocks + 1);
+		}
+		offsets[blocks] = offset;
+		symbols[blocks] = n;
+		first[blocks + 1] = first[blocks] + n;
+		blocks++;
+	}
+
+	/**
+	 * Returns the position (in bytes) of the encoded message in the file
+	 */
+	public long start() {
+		return start;
+	}
+
+	/**
+	 * Returns the number of blocks
+	 */
+	public int blocks() {
+		return blocks;
+	}
+
+	/**
+	 * Returns the position of a block (in bits from the start of the message)
+	 */
+	public long offset(int block) {
+		return offsets[block];
+	}
+
+	/**
+	 * Returns the number of symbols encoded in a block
+	 */
+	public long symbols(int block) {
+		return symbols[block];
+	}
+
+	/**
+	 * Returns the position in the original file of the first symbol of a block
+	 */
+	public long first(int block) {
+		return first[block];
+	}
+
+	/**
+	 * Returns the total number of symbols
+	 */
+	public long totalSymbols() {
+		return first[blocks];
+	}
+
+	/**
+	 * Finds the block that holds a symbol (binary search)
+	 * @param position is the position of the symbol in the original file
+	 * @return the block
+	 */
+	public int find(long position) {
+		int lo = 0, hi = blocks - 1;
+
+		while (lo < hi) {						// last block whose first symbol <= position
+			int mid = (lo + hi + 1) >>> 1;
+			if (first[mid] <= position)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Creates a reader of bits positioned at the start of a block
+	 * @param in is the encoded file
+	 * @param block is the block
+	 * @return the reader
+	 */
+	public BitReader reader(InputFile in, int block) {
+		BitReader bits = new BitReader(in.regions(start + offsets[block] / 8));
+		int r = (int) (offsets[block] % 8);
+
+		if (r > 0) {							// the block does not start at a byte boundary
+			bits.peek(r);
+			bits.skip(r);
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Returns the size in bytes of the footer
+	 */
+	public long size() {
+		return 4 + (long) blocks * EntrySize + TrailerSize;
+	}
+
+	/**
+	 * Writes the index as a footer
+	 * @param out is the output stream (at a byte boundary)
+	 * @param position is the position in the file at which the footer starts
+	 * @throws IOException
+	 * @throws RuntimeException if some block has more than MaxSymbols symbols
+	 */
+	public void write(BitWriter out, long position) throws IOException {
+		ByteBuffer footer = ByteBuffer.allocate((int) size())
+									  .order(ByteOrder.LITTLE_ENDIAN);
+
+		footer.putInt(blocks);
+		for (int i = 0; i < blocks; i++) {
+			if (symbols[i] > MaxSymbols)
+				throw new RuntimeException("Block " + i + " of " + symbols[i] + " symbols is too large for an index");
+			footer.putLong(offsets[i]).putInt((int) symbols[i]);
+		}
+		footer.putLong(position);
+		out.writeBytes(footer.array(), 0, footer.position());
+	}
+
+	/**
+	 * Reads the index from the footer of a file
+	 * @param in is the file
+	 * @param start is the position (in bytes) of the encoded message in the file
+	 * @return the index
+	 * @throws IOException if the footer is truncated or corrupt
+	 */
+	public static BlockIndex read(InputFile in, long start) throws IOException {
+		BlockIndex index = new BlockIndex(start);
+		if (in.size() - TrailerSize < start)
+			throw new IOException("The encoded file is truncated");
+		long position = in.read(in.size() - TrailerSize, TrailerSize)
+						  .order(ByteOrder.LITTLE_ENDIAN).getLong();
+		long size = in.size() - TrailerSize - position;
+		if (position < start || size < 4 || size > Integer.MAX_VALUE)
+			throw new IOException("Corrupt index of blocks at " + position);
+		ByteBuffer footer = in.read(position, (int) size).order(ByteOrder.LITTLE_ENDIAN);
+		int n = footer.getInt();
+
+		if (n < 0 || n > footer.remaining() / EntrySize)
+			throw new IOException("Corrupt index of " + n + " blocks");
+		for (int i = 0; i < n; i++) {
+			long offset = footer.getLong();
+			int symbols = footer.getInt();
+			if (offset < 0 || offset > 8 * (position - start) || symbols < 0)
+				throw new IOException("Corrupt entry of the index of blocks: " + i);
+			index.add(offset, symbols);
+		}
+
+		return index;
+	}
+}
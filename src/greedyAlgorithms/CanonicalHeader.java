@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact header for canonical huffman codes: it stores the number of symbols of the message
+ * and the length of the encoding of each symbol (the codes themselves are rebuilt from the
+ * lengths). It is written as a stream of bits:
+ *
+ * - the number k of bytes of the message size (8 bits) and the size itself (8k bits)
+ * - the number W of bits per length (8 bits). If W is 0 the code has a single symbol
+ *   (with an empty encoding), which follows in 16 bits (0 if the message is empty).
+ * - the number of possible symbols minus one, N-1 (16 bits), and the lengths of symbols
+ *   0..N-1 as W bits each, where 0 starts a run of absent symbols whose length (1..16)
+ *   follows in 4 bits.
+ * - "0"s up to the next byte boundary.
+ *
+ * With codes up to 15 bits long this takes 4 bits per symbol, and much less for alphabets
+ * with many absent symbols.
+ *
+ * @author guisanpea
+ *
+ */
+public class CanonicalHeader {
+	static final int RunBits = 4;			// bits of the length of a run of absent symbols
+
+	private final CodeTable table;			// the code
+	private final long total;				// number of symbols in the message
+
+	/**
+	 * Creates the header of a message
+	 * @param table is the code (assumed canonical)
+	 * @param total is the number of symbols in the message
+	 */
+	public CanonicalHeader(CodeTable table, long total) {
+		this.table = table;
+		this.total = total;
+	}
+
+	/**
+	 * Returns the code
+	 */
+	public CodeTable table() {
+		return table;
+	}
+
+	/**
+	 * Returns the number of symbols in the message
+	 */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * Writes the header
+	 * @param out is the output stream
+	 * @throws IOException
+	 */
+	public void write(BitWriter out) throws IOException {
+		walk(out);
+	}
+
+	/**
+	 * Returns the size in bytes of the header
+	 */
+	public int size() {
+		try {
+			return (int) ((walk(null) + 7) / 8);
+		} catch (IOException e) {			// cannot happen: nothing is written
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Reads a header (and skips the padding after it)
+	 * @param in is the input stream of bits
+	 * @return the header read
+	 */
+	public static CanonicalHeader read(BitReader in) {
+		int k = read(in, 8);
+		long total = 0;
+		int w, n;
+		int[] lengths;
+
+		for (int i = 0; i < k; i++)
+			total = total << 8 | read(in, 8);
+
+		w = read(in, 8);
+		if (w == 0) {								// a single symbol
+			int symbol = read(in, 16);
+			lengths = new int[symbol + 1];
+			Arrays.fill(lengths, -1);
+			lengths[symbol] = 0;
+		}
+		else {
+			n = read(in, 16) + 1;
+			lengths = new int[n];
+			for (int c = 0; c < n; ) {
+				int l = read(in, w);
+				if (l > 0)
+					lengths[c++] = l;
+				else									// a run of absent symbols
+					for (int r = read(in, RunBits) + 1; r > 0; r--)
+						lengths[c++] = -1;
+			}
+		}
+		in.align();
+
+		return new CanonicalHeader(new CodeTable(lengths), total);
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Goes through the fields of the header, writing them if there is an output stream
+	 * @param out is the output stream (or null)
+	 * @return the number of bits of the header (including the padding)
+	 * @throws IOException
+	 */
+	private long walk(BitWriter out) throws IOException {
+		int k = 0;
+		int w = 32 - Integer.numberOfLeadingZeros(table.maxLength());
+		int n = (table.size() == 0) ? 0 : table.symbol(table.size() - 1) + 1;
+		long bits;
+
+		for (long t = total; t > 0; t >>>= 8)
+			k++;
+		bits = write(out, k, 8);
+		for (int i = k - 1; i >= 0; i--)
+			bits += write(out, total >>> (8 * i) & 0xFF, 8);
+
+		bits += write(out, w, 8);
+		if (w == 0)										// (an empty message has symbol 0)
+			bits += write(out, (n == 0) ? 0 : table.symbol(0), 16);
+		else {
+			bits += write(out, n - 1, 16);
+			for (int c = 0; c < n; ) {
+				if (table.contains(c))
+					bits += write(out, table.length(c++), w);
+				else {
+					int r = 0;
+					while (c < n && !table.contains(c) && r < (1 << RunBits)) {
+						c++;
+						r++;
+					}
+					bits += write(out, 0, w) + write(out, r - 1, RunBits);
+				}
+			}
+		}
+		bits += write(out, 0, (int) ((8 - bits % 8) % 8));
+
+		return bits;
+	}
+
+	private static int write(BitWriter out, long v, int n) throws IOException {
+		if (out != null)
+			out.write(v, n);
+		return n;
+	}
+
+	private static int read(BitReader in, int n) {
+		int v = in.peek(n);
+		in.skip(n);
+		return v;
+	}
+}
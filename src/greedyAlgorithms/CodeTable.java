@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoding of each symbol of a huffman code, stored as primitive (code bits, length) pairs
+ * indexed by symbol. Code bits are right-aligned (the last bit of the code is the LSB).
+ *
+ * @author guisanpea
+ *
+ */
+public class CodeTable {
+	private final long[] codes;		// bits of the encoding of each symbol
+	private final int[] lengths;	// length of the encoding of each symbol (-1 if not present)
+	private final int[] symbols;	// symbols present in the code, in ascending order
+	private int maxLength;			// length of the longest encoding
+
+	/**
+	 * Traces the encoding of each symbol in a huffman tree
+	 * @param tree is the huffman tree
+	 */
+	public CodeTable(HuffmanTree tree) {
+		int n = tree.leaves();
+		int maxSymbol = (n == 0) ? -1 : tree.symbol(n - 1);	// leaves are in ascending order
+		long[] code = new long[tree.size()];				// code of each node
+		int[] depth = new int[tree.size()];					// and its length
+
+		for (int i = tree.size() - 1; i >= n; i--) {		// parents before children:
+			int l = tree.left(i), r = tree.right(i);		// "0" left, "1" right
+			code[l] = code[i] << 1;
+			code[r] = code[i] << 1 | 1;
+			depth[l] = depth[r] = depth[i] + 1;
+		}
+
+		codes = new long[maxSymbol + 1];
+		lengths = new int[maxSymbol + 1];
+		symbols = new int[n];
+		Arrays.fill(lengths, -1);
+		maxLength = 0;
+		for (int i = 0; i < n; i++) {
+			symbols[i] = tree.symbol(i);
+			codes[symbols[i]] = code[i];
+			lengths[symbols[i]] = depth[i];
+			maxLength = Math.max(maxLength, depth[i]);
+		}
+	}
+
+	/**
+	 * Assigns canonical codes given the length of the encoding of each symbol: codes of the
+	 * same length are consecutive and in ascending order of symbols, and shorter codes come
+	 * first (so the lengths are all that is needed to rebuild the code)
+	 * @param lengths is the length of the encoding of each symbol (-1 if not present)
+	 */
+	public CodeTable(int[] lengths) {
+		int[] count;				// number of codes of each length
+		long[] next;				// next code of each length
+		int n = 0;
+
+		this.codes = new long[lengths.length];
+		this.lengths = lengths.clone();
+		maxLength = 0;
+		for (int l : lengths)
+			if (l >= 0) {
+				maxLength = Math.max(maxLength, l);
+				n++;
+			}
+
+		count = new int[maxLength + 1];				// counting sort by length
+		for (int l : lengths)
+			if (l > 0)
+				count[l]++;
+		next = new long[maxLength + 1];
+		for (int l = 1; l <= maxLength; l++)
+			next[l] = (next[l - 1] + count[l - 1]) << 1;
+
+		symbols = new int[n];
+		n = 0;
+		for (int c = 0; c < lengths.length; c++)
+			if (lengths[c] >= 0) {
+				symbols[n++] = c;
+				codes[c] = next[lengths[c]]++;
+			}
+	}
+
+	/**
+	 * Returns the bits of the encoding of a symbol
+	 */
+	public long code(int symbol) {
+		return codes[symbol];
+	}
+
+	/**
+	 * Returns the length of the encoding of a symbol
+	 */
+	public int length(int symbol) {
+		return lengths[symbol];
+	}
+
+	/**
+	 * Returns whether a symbol has an encoding
+	 */
+	public boolean contains(int symbol) {
+		return symbol < lengths.length && lengths[symbol] >= 0;
+	}
+
+	/**
+	 * Returns the number of symbols in the code
+	 */
+	public int size() {
+		return symbols.length;
+	}
+
+	/**
+	 * Returns the i-th symbol (in ascending order)
+	 */
+	public int symbol(int i) {
+		return symbols[i];
+	}
+
+	/**
+	 * Returns the number of possible symbols (0..alphabetSize-1)
+	 */
+	public int alphabetSize() {
+		return lengths.length;
+	}
+
+	/**
+	 * Returns a copy of the length of the encoding of each symbol (-1 if not present)
+	 */
+	public int[] lengths() {
+		return lengths.clone();
+	}
+
+	/**
+	 * Returns the length of the longest encoding
+	 */
+	public int maxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Returns the encoding of a symbol as a string of "0"s and "1"s
+	 */
+	public String toBinaryString(int symbol) {
+		StringBuilder s = new StringBuilder(lengths[symbol]);
+
+		for (int i = lengths[symbol] - 1; i >= 0; i--)
+			s.append((codes[symbol] >>> i & 1) == 0 ? '0' : '1');
+
+		return s.toString();
+	}
+
+	/**
+	 * For printing the code (as a map from symbols to strings of "0"s and "1"s)
+	 */
+	public String toString() {
+		Map<Character, String> table = new HashMap<>();
+
+		for (int c : symbols)
+			table.put((char) c, toBinaryString(c));
+
+		return table.toString();
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+/**
+ * Receives the metrics of encoding and decoding files (see HuffmanCode.setListener): the time
+ * spent in each phase, the size of each block and the time spent on it, and the sizes of each
+ * file. Listeners are called from the thread that does the work (several at once while
+ * encoding or decoding in parallel), so they must be thread-safe, and they should be cheap:
+ * they are called once per phase and block, not per symbol. Every method does nothing unless
+ * overridden. See JfrListener and CodecMetrics.
+ *
+ * @author guisanpea
+ *
+ */
+public interface CodecListener {
+
+	/**
+	 * Phases of encoding and decoding a file
+	 */
+	enum Phase {
+		Count,								// counting the frequencies of the symbols
+		Generate,							// generating the code from them
+		Header,								// writing, or reading and building the decoding
+											// tables of, the header
+		Encode,								// the pass that writes the bitstream
+		Decode								// the pass that reads the bitstream
+	}
+
+	/**
+	 * A phase has finished
+	 * @param phase is the phase
+	 * @param nanos is the time spent on it, in nanoseconds
+	 */
+	default void phase(Phase phase, long nanos) {
+	}
+
+	/**
+	 * A block has been encoded or decoded
+	 * @param phase is either Encode or Decode
+	 * @param bytes is the number of bytes of the original block
+	 * @param bits is the number of bits of the encoded block (0 if unknown, as when decoding)
+	 * @param nanos is the time spent on it, in nanoseconds (0 if it was not timed on its own,
+	 * as when blocks are encoded in parallel)
+	 */
+	default void block(Phase phase, long bytes, long bits, long nanos) {
+	}
+
+	/**
+	 * A file has been encoded or decoded
+	 * @param phase is either Encode or Decode
+	 * @param bytesIn is the number of bytes read
+	 * @param bytesOut is the number of bytes written
+	 * @param nanos is the time spent on it, in nanoseconds
+	 */
+	default void file(Phase phase, long bytesIn, long bytesOut, long nanos) {
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener that adds up the metrics of every file encoded or decoded, per phase: how many
+ * times it ran and the time spent on it, the blocks and their sizes and times, and the bytes
+ * read and written. The totals can be read at any time (e.g., to export them to a metrics
+ * registry), or printed as "name value" lines with toString(). It can be shared among threads,
+ * and nothing is allocated per call.
+ *
+ * @author guisanpea
+ *
+ */
+public class CodecMetrics implements CodecListener {
+	private static final int Phases = Phase.values().length;
+
+	private final LongAdder[] runs = adders();			// times each phase ran
+	private final LongAdder[] nanos = adders();			// time spent on each phase
+	private final LongAdder[] blocks = adders();		// blocks of each phase
+	private final LongAdder[] blockBytes = adders();	// original bytes of those blocks
+	private final LongAdder[] blockBits = adders();		// encoded bits of those blocks (if known)
+	private final LongAdder[] blockNanos = adders();	// time spent on those blocks (if timed)
+	private final LongAdder[] files = adders();			// files of each phase
+	private final LongAdder[] bytesIn = adders();		// bytes read by those files
+	private final LongAdder[] bytesOut = adders();		// bytes written by those files
+
+	@Override
+	public void phase(Phase phase, long nanos) {
+		runs[phase.ordinal()].increment();
+		this.nanos[phase.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void block(Phase phase, long bytes, long bits, long nanos) {
+		blocks[phase.ordinal()].increment();
+		blockBytes[phase.ordinal()].add(bytes);
+		blockBits[phase.ordinal()].add(bits);
+		blockNanos[phase.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void file(Phase phase, long bytesIn, long bytesOut, long nanos) {
+		files[phase.ordinal()].increment();
+		this.bytesIn[phase.ordinal()].add(bytesIn);
+		this.bytesOut[phase.ordinal()].add(bytesOut);
+	}
+
+	/**
+	 * Returns the number of times a phase ran
+	 */
+	public long runs(Phase phase) {
+		return runs[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the time spent on a phase, in nanoseconds
+	 */
+	public long nanos(Phase phase) {
+		return nanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of blocks of a phase (Encode or Decode)
+	 */
+	public long blocks(Phase phase) {
+		return blocks[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of original bytes of the blocks of a phase
+	 */
+	public long blockBytes(Phase phase) {
+		return blockBytes[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of encoded bits of the blocks of a phase (those known)
+	 */
+	public long blockBits(Phase phase) {
+		return blockBits[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the time spent on the blocks of a phase, in nanoseconds (those timed)
+	 */
+	public long blockNanos(Phase phase) {
+		return blockNanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of files of a phase (Encode or Decode)
+	 */
+	public long files(Phase phase) {
+		return files[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of bytes read by the files of a phase
+	 */
+	public long bytesIn(Phase phase) {
+		return bytesIn[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of bytes written by the files of a phase
+	 */
+	public long bytesOut(Phase phase) {
+		return bytesOut[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the totals as "name value" lines (e.g., "Decode.blockNanos 1234"), for every
+	 * phase that ran
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+
+		for (Phase p : Phase.values()) {
+			if (runs(p) == 0 && blocks(p) == 0 && files(p) == 0)
+				continue;
+			line(s, p, "runs", runs(p));
+			line(s, p, "nanos", nanos(p));
+			if (blocks(p) > 0) {
+				line(s, p, "blocks", blocks(p));
+				line(s, p, "blockBytes", blockBytes(p));
+				line(s, p, "blockBits", blockBits(p));
+				line(s, p, "blockNanos", blockNanos(p));
+			}
+			if (files(p) > 0) {
+				line(s, p, "files", files(p));
+				line(s, p, "bytesIn", bytesIn(p));
+				line(s, p, "bytesOut", bytesOut(p));
+			}
+		}
+		return s.toString();
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	private static LongAdder[] adders() {
+		LongAdder[] a = new LongAdder[Phases];
+
+		for (int i = 0; i < Phases; i++)
+			a[i] = new LongAdder();
+		return a;
+	}
+
+	private static void line(StringBuilder s, Phase phase, String name, long value) {
+		s.append(phase).append('.').append(name).append(' ').append(value).append('\n');
+	}
+}
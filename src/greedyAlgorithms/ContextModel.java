@@ -0,0 +1,312 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Order-1 context model: each byte is encoded with a code chosen by the byte before it (its
+ * context; the first byte has context 0), which captures most of the dependence between
+ * consecutive bytes of text. Frequent contexts get an optimal canonical code of their own
+ * (within a maximum length, if any), while rare contexts share a single code built from all
+ * of them: a context gets its own code only if it saves more bits than its header takes,
+ * estimated against the order-0 code of the whole message.
+ *
+ * The header has a bitmap of the contexts with a code of their own (256 bits) followed by
+ * the canonical headers of the shared code (with the size of the message) and of the code
+ * of each of those contexts, in ascending order (with size 0).
+ *
+ * @author guisanpea
+ *
+ */
+public class ContextModel {
+	static final int Contexts = 256;		// number of contexts (previous bytes)
+
+	private final int[] classes;			// code of each context (0: the shared one)
+	private final CodeTable[] tables;		// the codes, the shared one first
+	private final CodeTable[] byContext;	// code of each context
+	private DecodeTable[] decoders;			// decoding tables of each context (null until needed)
+	private final long[] counts;			// frequency of each symbol after each context, at
+											// counts[context << 8 | symbol] (null if read)
+	private final long total;				// number of symbols of the message
+
+	/**
+	 * Builds the model of a message
+	 * @param counts is the frequency of each symbol after each context, at
+	 * counts[context << 8 | symbol] (see count)
+	 * @param maxLength is the maximum length of an encoding (0 if unlimited)
+	 */
+	public ContextModel(long[] counts, int maxLength) {
+		Histogram all = new Histogram(256);
+		Histogram shared = new Histogram(256);
+		int[] lengths0;						// lengths of the order-0 code
+		int[][] own = new int[Contexts][];	// lengths of the code of each context (or null)
+		int n = 1;
+		long t = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			all.set(i & 0xFF, all.frequency(i & 0xFF) + counts[i]);
+			t += counts[i];
+		}
+		lengths0 = lengths(all, maxLength);
+
+		/*
+		 * Chooses the contexts with a code of their own
+		 */
+		for (int c = 0; c < Contexts; c++) {
+			Histogram h = histogram(counts, c);
+			if (h.symbols() == 0)
+				continue;
+			int[] lengths = lengths(h, maxLength);
+			long saved = 0;
+			for (int s = 0; s < 256; s++)
+				if (lengths[s] >= 0)
+					saved += h.frequency(s) * (lengths0[s] - lengths[s]);
+			if (saved > 8 * new CanonicalHeader(new CodeTable(lengths), 0).size()) {
+				own[c] = lengths;
+				n++;
+			}
+			else
+				shared.add(h);
+		}
+
+		this.classes = new int[Contexts];
+		this.tables = new CodeTable[n];
+		this.counts = counts;
+		this.total = t;
+		tables[0] = new CodeTable(lengths(shared, maxLength));
+		n = 1;
+		for (int c = 0; c < Contexts; c++)
+			if (own[c] != null) {
+				classes[c] = n;
+				tables[n++] = new CodeTable(own[c]);
+			}
+		this.byContext = byContext(classes, tables);
+	}
+
+	/**
+	 * Counts the symbols after each context in a buffer, a block at a time
+	 * @param in is the input buffer (consumed)
+	 * @param counts is the frequency of each symbol after each context, which is updated
+	 * @param context is the context of the first symbol (the last symbol of the buffer before)
+	 * @param block is a scratch array of bytes
+	 * @return the context of the symbol after the buffer
+	 */
+	public static int count(ByteBuffer in, long[] counts, int context, byte[] block) {
+		while (in.hasRemaining()) {
+			int n = Math.min(block.length, in.remaining());
+			in.get(block, 0, n);
+			for (int i = 0; i < n; i++) {
+				int b = block[i] & 0xFF;
+				counts[context << 8 | b]++;
+				context = b;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Encodes the symbols in a buffer, a block at a time
+	 * @param in is the input buffer (consumed)
+	 * @param out is the output stream of bits
+	 * @param context is the context of the first symbol
+	 * @param block is a scratch array of bytes
+	 * @return the context of the symbol after the buffer
+	 * @throws IOException
+	 */
+	public int encode(ByteBuffer in, BitWriter out, int context, byte[] block) throws IOException {
+		CodeTable[] codes = byContext;
+
+		while (in.hasRemaining()) {
+			int n = Math.min(block.length, in.remaining());
+			in.get(block, 0, n);
+			for (int i = 0; i < n; i++) {
+				int b = block[i] & 0xFF;
+				out.write(codes[context].code(b), codes[context].length(b));
+				context = b;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Decodes a number of symbols into an array
+	 * @param in is the input stream of bits
+	 * @param block is the array in which symbols are stored
+	 * @param off is the position of the first symbol in the array
+	 * @param n is the number of symbols
+	 * @param context is the context of the first symbol
+	 * @return the context of the symbol after the last one
+	 */
+	public int decode(BitReader in, byte[] block, int off, int n, int context) {
+		DecodeTable[] d = decoders();
+
+		for (int i = off; i < off + n; i++)
+			block[i] = (byte) (context = d[context].decode(in));
+		return context;
+	}
+
+	/**
+	 * Returns the number of symbols of the message
+	 */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * Returns whether the frequencies are known (the model was built from them, not read)
+	 */
+	public boolean counted() {
+		return counts != null;
+	}
+
+	/**
+	 * Returns the number of codes (the shared one and those of frequent contexts)
+	 */
+	public int tables() {
+		return tables.length;
+	}
+
+	/**
+	 * Returns the conditional entropy of a symbol given its context, in bits per symbol
+	 * (0 if the frequencies are unknown)
+	 */
+	public double entropy() {
+		double e = 0;
+
+		if (counts == null || total == 0)
+			return 0;
+		for (int c = 0; c < Contexts; c++) {
+			long f = 0;
+			for (int s = 0; s < 256; s++)
+				f += counts[c << 8 | s];
+			for (int s = 0; s < 256; s++)
+				if (counts[c << 8 | s] > 0)
+					e -= counts[c << 8 | s] * Math.log((double) counts[c << 8 | s] / f);
+		}
+		return e / total / Math.log(2);
+	}
+
+	/**
+	 * Returns the number of bits of the encoded message (0 if the frequencies are unknown)
+	 */
+	public long bits() {
+		long bits = 0;
+
+		if (counts == null)
+			return 0;
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] > 0)
+				bits += counts[i] * byContext[i >>> 8].length(i & 0xFF);
+		return bits;
+	}
+
+	/**
+	 * Writes the header
+	 * @param out is the output stream (at a byte boundary)
+	 * @throws IOException
+	 */
+	public void write(BitWriter out) throws IOException {
+		for (int c = 0; c < Contexts; c++)
+			out.write(classes[c] != 0 ? 1 : 0, 1);
+		for (int i = 0; i < tables.length; i++)
+			new CanonicalHeader(tables[i], (i == 0) ? total : 0).write(out);
+	}
+
+	/**
+	 * Returns the size in bytes of the header
+	 */
+	public int size() {
+		int size = Contexts / 8;
+
+		for (int i = 0; i < tables.length; i++)
+			size += new CanonicalHeader(tables[i], (i == 0) ? total : 0).size();
+		return size;
+	}
+
+	/**
+	 * Reads a header (and skips the padding after it)
+	 * @param in is the input stream of bits
+	 * @return the model (without the frequencies)
+	 */
+	public static ContextModel read(BitReader in) {
+		int[] classes = new int[Contexts];
+		CanonicalHeader shared;
+		CodeTable[] tables;
+		int n = 1;
+
+		for (int c = 0; c < Contexts; c++) {
+			if (in.peek(1) != 0)
+				classes[c] = n++;
+			in.skip(1);
+		}
+		tables = new CodeTable[n];
+		shared = CanonicalHeader.read(in);
+		tables[0] = shared.table();
+		for (int i = 1; i < n; i++)
+			tables[i] = CanonicalHeader.read(in).table();
+
+		return new ContextModel(classes, tables, shared.total());
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	private ContextModel(int[] classes, CodeTable[] tables, long total) {
+		this.classes = classes;
+		this.tables = tables;
+		this.counts = null;
+		this.total = total;
+		this.byContext = byContext(classes, tables);
+	}
+
+	/**
+	 * Returns the decoding tables of each context, building them if needed (once per code)
+	 */
+	private DecodeTable[] decoders() {
+		if (decoders == null) {
+			DecodeTable[] d = new DecodeTable[tables.length];
+			decoders = new DecodeTable[Contexts];
+			for (int i = 0; i < tables.length; i++)
+				d[i] = new DecodeTable(tables[i]);
+			for (int c = 0; c < Contexts; c++)
+				decoders[c] = d[classes[c]];
+		}
+		return decoders;
+	}
+
+	/**
+	 * Returns the code of each context
+	 */
+	private static CodeTable[] byContext(int[] classes, CodeTable[] tables) {
+		CodeTable[] codes = new CodeTable[Contexts];
+
+		for (int c = 0; c < Contexts; c++)
+			codes[c] = tables[classes[c]];
+		return codes;
+	}
+
+	/**
+	 * Returns the length of the encoding of each symbol (-1 if not present), within a
+	 * maximum length (0 if unlimited)
+	 */
+	private static int[] lengths(Histogram frequencies, int maxLength) {
+		return (maxLength > 0) ? PackageMerge.lengths(frequencies, maxLength) : HuffmanLengths.lengths(frequencies);
+	}
+
+	/**
+	 * Returns the frequency of each symbol after a context
+	 */
+	private static Histogram histogram(long[] counts, int context) {
+		Histogram h = new Histogram(256);
+
+		for (int s = 0; s < 256; s++)
+			h.set(s, counts[context << 8 | s]);
+		return h;
+	}
+}
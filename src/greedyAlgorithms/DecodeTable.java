@@ -0,0 +1,197 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.Arrays;
+
+/**
+ * Lookup tables for decoding huffman codes several bits at a time.
+ * The root table is indexed by the next RootBits bits of the stream and directly gives
+ * the symbol and the length of its encoding. Codes longer than that are resolved through
+ * second-level (and, if needed, deeper) tables linked from the root one. Codes of at most
+ * MaxRootBits (e.g., with a limited length) are all resolved by the root table.
+ *
+ * Every entry is packed in an int: a leaf holds (symbol << 8 | bits consumed), and a link
+ * to a subtable holds (LinkFlag | offset << 5 | bits of the subtable).
+ *
+ * @author guisanpea
+ *
+ */
+public class DecodeTable {
+	static final int RootBits = 10;			// number of bits looked up in the root table
+	static final int MaxRootBits = 12;		// max. length of codes resolved by the root table
+	static final int SubBits = 8;			// max. number of bits looked up in a subtable
+	private static final int LinkFlag = 0x80000000;
+
+	private int[] table;					// all the tables, the root one first
+	private int size;						// number of entries in use
+	private final int rootBits;				// number of bits looked up in the root table
+	private final int maxLength;			// length of the longest code
+
+	/**
+	 * Builds the tables from a huffman code
+	 * @param tableEncoding is the encoding of each symbol
+	 */
+	public DecodeTable(CodeTable tableEncoding) {
+		int n = tableEncoding.size();
+		int[] symbols = new int[n];
+		long[] codes = new long[n];
+		int[] lengths = new int[n];
+		maxLength = tableEncoding.maxLength();
+
+		for (int i = 0; i < n; i++) {
+			symbols[i] = tableEncoding.symbol(i);
+			codes[i] = tableEncoding.code(symbols[i]);
+			lengths[i] = tableEncoding.length(symbols[i]);
+		}
+		sortByCode(symbols, codes, lengths);
+
+		rootBits = Math.max(1, (maxLength <= MaxRootBits) ? maxLength : RootBits);
+		table = new int[1 << rootBits];
+		size = table.length;
+		fill(0, rootBits, symbols, codes, lengths, 0, n, 0);
+	}
+
+	/**
+	 * Decodes the next symbol of the stream
+	 * @param in is the stream of bits
+	 * @return the symbol read
+	 */
+	public int decode(BitReader in) {
+		int offset = 0;
+		int bits = rootBits;
+		int e = table[in.peek(bits)];
+
+		while (e < 0) {							// follow the links to the subtables
+			in.skip(bits);
+			offset = (e & ~LinkFlag) >>> 5;
+			bits = e & 31;
+			e = table[offset + in.peek(bits)];
+		}
+		in.skip(e & 0xFF);
+
+		return e >>> 8;
+	}
+
+	/**
+	 * Returns the length of the longest code
+	 */
+	int maxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Decodes the symbol at the start of a word of bits, for decoders that keep their own
+	 * stream of bits
+	 * @param word has the next bits of the stream, left-aligned (at least as many as the
+	 * longest code)
+	 * @return the symbol and the length of its encoding, packed as (symbol << 8 | length)
+	 */
+	int lookup(long word) {
+		int e = table[(int) (word >>> (64 - rootBits))];
+		int used = 0;
+		int bits = rootBits;
+
+		while (e < 0) {							// follow the links to the subtables
+			used += bits;
+			bits = e & 31;
+			e = table[((e & ~LinkFlag) >>> 5) + (int) ((word << used) >>> (64 - bits))];
+		}
+
+		return (e & ~0xFF) | (used + (e & 0xFF));
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Fills a table with the codes in a range (codes must be sorted and share the first
+	 * consumed bits)
+	 * @param offset is the position of the table
+	 * @param bits is the number of bits looked up in the table
+	 * @param from is the first code of the range
+	 * @param to is the position after the last code of the range
+	 * @param consumed is the number of bits consumed by the parent tables
+	 */
+	private void fill(int offset, int bits, int[] symbols, long[] codes, int[] lengths,
+					  int from, int to, int consumed) {
+		int i = from;
+
+		while (i < to) {
+			int r = lengths[i] - consumed;					// bits left in this code
+			long rest = codes[i] & ((1L << r) - 1);
+
+			if (r <= bits) {								// resolved in this table:
+				int first = (int) (rest << (bits - r));		// fill every index with this prefix
+				Arrays.fill(table, offset + first, offset + first + (1 << (bits - r)),
+							symbols[i] << 8 | r);
+				i++;
+			}
+			else {											// needs a subtable
+				int index = (int) (rest >>> (r - bits));
+				int j = i;
+				int maxRest = 0;
+				while (j < to && prefix(codes[j], lengths[j] - consumed, bits) == index) {
+					maxRest = Math.max(maxRest, lengths[j] - consumed - bits);
+					j++;
+				}
+				int subBits = Math.min(SubBits, maxRest);
+				int sub = allocate(1 << subBits);
+				table[offset + index] = LinkFlag | sub << 5 | subBits;
+				fill(sub, subBits, symbols, codes, lengths, i, j, consumed + bits);
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first bits of the rest of a code (or -1 if it is not long enough)
+	 */
+	private static int prefix(long code, int rest, int bits) {
+		return (rest <= bits) ? -1 : (int) ((code & ((1L << rest) - 1)) >>> (rest - bits));
+	}
+
+	/**
+	 * Reserves space for a new subtable
+	 * @param n is the number of entries
+	 * @return the offset of the subtable
+	 */
+	private int allocate(int n) {
+		if (size + n > table.length)
+			table = Arrays.copyOf(table, Math.max(2 * table.length, size + n));
+		int offset = size;
+		size += n;
+		return offset;
+	}
+
+	/**
+	 * Sorts the codes in lexicographical order of their bits (an index sort: codes of wider
+	 * alphabets have up to 65536 symbols)
+	 */
+	private static void sortByCode(int[] symbols, long[] codes, int[] lengths) {
+		int n = codes.length;
+		Integer[] order = new Integer[n];
+		int[] s = symbols.clone(), l = lengths.clone();
+		long[] c = codes.clone();
+
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, (i, j) -> Long.compareUnsigned(aligned(c[i], l[i]), aligned(c[j], l[j])));
+		for (int i = 0; i < n; i++) {
+			symbols[i] = s[order[i]];
+			codes[i] = c[order[i]];
+			lengths[i] = l[order[i]];
+		}
+	}
+
+	/**
+	 * Left-aligns a code in a 64-bit word
+	 */
+	private static long aligned(long code, int length) {
+		return (length == 0) ? 0 : code << (64 - length);
+	}
+}
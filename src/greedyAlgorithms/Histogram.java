@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.Arrays;
+
+/**
+ * Frequency of each symbol, counted in primitive arrays.
+ * Bytes are counted in Lanes interleaved tables (the i-th byte of each group of Lanes goes
+ * to the i-th table), so that runs of the same byte do not make every increment wait for
+ * the previous one to be stored. The tables are merged when the frequencies are queried.
+ * Counting is done in ints, which are folded into 64-bit totals every FoldThreshold counts
+ * (before any of them can overflow), so frequencies are only limited by the long type.
+ * Frequencies read in bulk (see frequencies()) are merged with vectors when the Vector API
+ * paths are enabled (see Vectors); counting itself is a scatter of increments, which the
+ * Vector API can only do with gathers and scatters that are much slower than the tables.
+ *
+ * @author guisanpea
+ *
+ */
+public class Histogram {
+	static final int Lanes = 4;				// number of interleaved count tables
+	static final int FoldThreshold = 1 << 30;	// max. counts in the tables before folding them
+
+	private final int[] counts;				// count tables, one after the other
+	private final long[] totals;			// counts already folded, for each symbol
+	private long pending;					// counts in the tables since they were folded
+	private final int alphabetSize;			// number of possible symbols (0..alphabetSize-1)
+
+	/**
+	 * Creates an empty histogram
+	 * @param alphabetSize is the number of possible symbols
+	 */
+	public Histogram(int alphabetSize) {
+		this.alphabetSize = alphabetSize;
+		this.counts = new int[Lanes * alphabetSize];
+		this.totals = new long[alphabetSize];
+		this.pending = 0;
+	}
+
+	/**
+	 * Counts the bytes in a block (requires an alphabet of at least 256 symbols)
+	 * @param block is the block of bytes
+	 * @param off is the position of the first byte
+	 * @param len is the number of bytes
+	 */
+	public void add(byte[] block, int off, int len) {
+		final int[] c = counts;
+		final int s1 = alphabetSize, s2 = 2 * alphabetSize, s3 = 3 * alphabetSize;
+		int i = off;
+		int end = off + len;
+
+		reserve(len);
+		for (; i + Lanes <= end; i += Lanes) {
+			c[block[i] & 0xFF]++;
+			c[s1 + (block[i + 1] & 0xFF)]++;
+			c[s2 + (block[i + 2] & 0xFF)]++;
+			c[s3 + (block[i + 3] & 0xFF)]++;
+		}
+		for (; i < end; i++)
+			c[block[i] & 0xFF]++;
+	}
+
+	/**
+	 * Counts some symbols (requires an alphabet including all of them)
+	 * @param symbols is an array with the symbols
+	 * @param n is the number of symbols
+	 */
+	public void add(int[] symbols, int n) {
+		final int[] c = counts;
+		final int s1 = alphabetSize, s2 = 2 * alphabetSize, s3 = 3 * alphabetSize;
+		int i = 0;
+
+		reserve(n);
+		for (; i + Lanes <= n; i += Lanes) {
+			c[symbols[i]]++;
+			c[s1 + symbols[i + 1]]++;
+			c[s2 + symbols[i + 2]]++;
+			c[s3 + symbols[i + 3]]++;
+		}
+		for (; i < n; i++)
+			c[symbols[i]]++;
+	}
+
+	/**
+	 * Counts the characters of a text (requires an alphabet including all of them)
+	 * @param text is the text
+	 */
+	public void add(CharSequence text) {
+		int n = text.length();
+
+		reserve(n);
+		for (int i = 0; i < n; i++)
+			counts[text.charAt(i)]++;
+	}
+
+	/**
+	 * Adds the counts of another histogram over the same alphabet
+	 * @param other is the other histogram
+	 */
+	public void add(Histogram other) {
+		for (int c = 0; c < alphabetSize; c++)
+			totals[c] += other.frequency(c);
+	}
+
+	/**
+	 * Sets the frequency of every symbol to 0
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(totals, 0);
+		pending = 0;
+	}
+
+	/**
+	 * Sets the frequency of a symbol
+	 * @param symbol is the symbol
+	 * @param frequency is its frequency
+	 */
+	public void set(int symbol, long frequency) {
+		for (int l = 0; l < Lanes; l++)
+			counts[l * alphabetSize + symbol] = 0;
+		totals[symbol] = frequency;
+	}
+
+	/**
+	 * Returns the frequency of a symbol
+	 */
+	public long frequency(int symbol) {
+		long f = totals[symbol];
+
+		for (int l = 0; l < Lanes; l++)
+			f += counts[l * alphabetSize + symbol];
+
+		return f;
+	}
+
+	/**
+	 * Stores the frequency of every symbol in an array
+	 * @param f is an array with room for alphabetSize frequencies (it may be the totals)
+	 */
+	public void frequencies(long[] f) {
+		if (Vectors.Enabled)
+			VectorKernels.frequencies(counts, Lanes, alphabetSize, totals, f);
+		else
+			for (int c = 0; c < alphabetSize; c++)
+				f[c] = frequency(c);
+	}
+
+	/**
+	 * Returns the number of possible symbols
+	 */
+	public int alphabetSize() {
+		return alphabetSize;
+	}
+
+	/**
+	 * Returns the number of symbols with non-zero frequency
+	 */
+	public int symbols() {
+		int n = 0;
+
+		for (int c = 0; c < alphabetSize; c++)
+			if (frequency(c) > 0)
+				n++;
+
+		return n;
+	}
+
+	/**
+	 * Returns the symbols with non-zero frequency, in ascending order of frequency (and of
+	 * symbol on ties). They are sorted as packed (frequency, symbol) pairs while frequencies
+	 * fit in 47 bits (and symbols in 16), and through an index otherwise.
+	 */
+	public int[] sorted() {
+		long[] f = new long[alphabetSize];
+		int[] symbols = new int[alphabetSize];
+		long max = 0;
+		int n = 0;
+
+		frequencies(f);
+		for (int c = 0; c < alphabetSize; c++) {
+			if (f[c] > 0)
+				symbols[n++] = c;
+			max = Math.max(max, f[c]);
+		}
+		symbols = Arrays.copyOf(symbols, n);
+		if (max < 1L << 47 && alphabetSize <= 1 << 16) {
+			long[] pairs = new long[n];
+			for (int i = 0; i < n; i++)
+				pairs[i] = f[symbols[i]] << 16 | symbols[i];
+			Arrays.sort(pairs);
+			for (int i = 0; i < n; i++)
+				symbols[i] = (int) (pairs[i] & 0xFFFF);
+		}
+		else {
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++)
+				order[i] = symbols[i];
+			Arrays.sort(order, (x, y) -> (f[x] != f[y]) ? Long.compare(f[x], f[y]) : Integer.compare(x, y));
+			for (int i = 0; i < n; i++)
+				symbols[i] = order[i];
+		}
+
+		return symbols;
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Makes room in the count tables for some counts, folding them into the totals if needed
+	 * @param n is the number of counts to be added
+	 */
+	private void reserve(int n) {
+		if (pending + n > FoldThreshold) {
+			frequencies(totals);
+			Arrays.fill(counts, 0);
+			pending = 0;
+		}
+		pending += n;
+	}
+}
@@ -5,18 +5,20 @@
  */
 package greedyAlgorithms;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.HashMap;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.PriorityQueue;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import greedyAlgorithms.CodecListener.Phase;
 
 /**
  * @author ccottap, guisanpea
@@ -24,10 +26,63 @@ import java.util.TreeSet;
  */
 public class HuffmanCode {
 
-	Map<Character, String> tableEncoding;	// Map with the encoding of each symbol
-	HuffmanTree tree;						// Huffman tree 
-	private String buffer;					// buffer for reading/writing to file
+	CodeTable tableEncoding;				// encoding (code bits, length) of each symbol
+	HuffmanTree tree;						// Huffman tree (built when needed)
+	private Histogram frequencies;			// frequency of each symbol (null if unknown)
+	private boolean canonical;				// whether canonical codes are generated
+	private int maxCodeLength;				// max. length of an encoding (0 if unlimited)
+	private TrainedTable trained;			// pre-trained code (null if generated for each file)
+	private TableCache cache;				// pre-trained codes known by the decoder (or null)
+	private boolean adaptive;				// whether files are encoded with adaptive codes
+	private Alphabet alphabet;				// alphabet of the symbols of encoded files
+	private Alphabet fileAlphabet;			// alphabet of the file being decoded
+	private boolean interleaved;			// whether files are encoded as interleaved streams
+	private boolean contextModeled;			// whether files are encoded with order-1 context models
+	private boolean rawBlocks;				// whether blocks not worth encoding are stored raw
+	private long[] blockTypes;				// number of blocks of each type of the last file
+											// encoded or decoded (null if not typed)
+	private long typedBytes;				// number of bytes of its blocks
+	private int fileFlags;					// flags of the file being decoded
+	private byte[] encoded;					// scratch array for blocks of interleaved streams
+	private long messageBytes;				// number of bytes of the message
+	private AdaptiveModel model;			// model of the adaptive code of the file being
+											// decoded (null if not adaptive)
+	private ContextModel context;			// context model of the last file encoded or
+											// decoded (null if it has a single code)
+	private DecodeTable decoder;			// decoding tables of the current code (or null)
+	private HuffmanCodec codec;				// codec of messages in memory with the current code
+	private CodecListener listener;			// receives the metrics of files (null if none)
+	private int sampling;					// 1 of every sampling blocks is counted (1: all)
+	private boolean samplingLoss;			// whether the exact frequencies are also counted
+	private Histogram sample;				// frequencies sampled for the code of the last file
+											// encoded (null if counted exactly)
+	private long headerBytes;				// size of the header of the last file encoded or
+											// decoded with the current code (-1 if none)
+	private long footerBytes;				// size of its footer (the index of its blocks)
+	private long fileBytes;					// size of the whole file
 	static final int BytesPerInt = 4; 		// number of bytes used to encode an int.
+	static final int BlockSize = 1 << 16;	// number of bytes scanned at a time
+	static final int Magic = 0x42465548;	// "HUFB": marks files in the container format
+											// (cannot be mistaken for a number of symbols)
+	static final int Version = 2;			// version of the container format
+	static final int WideVersion = 3;		// version with 2 bytes of flags (from LSB to MSB),
+											// written only if some flag needs the second one
+	static final int Indexed = 1;			// flag: the message is followed by an index of blocks
+	static final int Canonical = 2;			// flag: the header has just the code lengths
+	static final int Streamed = 4;			// flag: the message is a sequence of frames
+											// (written by a HuffmanOutputStream)
+	static final int Trained = 8;			// flag: the header has just the fingerprint of a
+											// pre-trained code
+	static final int Adaptive = 16;			// flag: the code changes after each frame, and
+											// the header has no code
+	static final int Symbols = 32;			// flag: the flags are followed by the alphabet of
+											// the symbols (1 byte)
+	static final int Interleaved = 64;		// flag: each block of the message is encoded as
+											// interleaved streams (see InterleavedCoder)
+	static final int Context = 128;			// flag: each byte is encoded with the code of the
+											// byte before it (see ContextModel)
+	static final int Typed = 256;			// flag: each block of the message is stored raw,
+											// as a run or encoded (see TypedBlocks)
 	
 	/**
 	 * Creates the object
@@ -35,6 +90,183 @@ public class HuffmanCode {
 	public HuffmanCode() {
 		tableEncoding = null;
 		tree = null;
+		frequencies = null;
+		canonical = false;
+		maxCodeLength = 0;
+		trained = null;
+		cache = null;
+		adaptive = false;
+		model = null;
+		alphabet = Alphabet.Bytes;
+		fileAlphabet = Alphabet.Bytes;
+		interleaved = false;
+		contextModeled = false;
+		context = null;
+		rawBlocks = false;
+		headerBytes = -1;
+		blockTypes = null;
+		typedBytes = 0;
+		fileFlags = 0;
+		encoded = new byte[0];
+		messageBytes = 0;
+		decoder = null;
+		codec = null;
+		listener = null;
+		sampling = 1;
+		samplingLoss = false;
+		sample = null;
+	}
+	
+	
+	/**
+	 * Sets whether canonical codes are generated. Files encoded with canonical codes have a
+	 * compact header with just the length of the encoding of each symbol (rather than its
+	 * frequency), from which the decoder rebuilds the codes without rebuilding the tree.
+	 * @param canonical is whether canonical codes are generated
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+	
+	
+	/**
+	 * Sets the maximum length of the encoding of a symbol. Optimal codes within that length are
+	 * generated with the package-merge algorithm (rather than by merging trees), which bounds
+	 * the size of the decoding tables at the expense of a slightly longer message.
+	 * Codes with a limited length are always canonical.
+	 * @param maxCodeLength is the maximum length in bits (0 for unlimited codes)
+	 */
+	public void setMaxCodeLength(int maxCodeLength) {
+		if (maxCodeLength < 0 || maxCodeLength > 56)
+			throw new RuntimeException("The maximum length of an encoding must be in [1..56] (or 0 for unlimited)");
+		this.maxCodeLength = maxCodeLength;
+	}
+	
+	
+	/**
+	 * Sets a pre-trained code to encode files with. The frequencies of the file are not counted
+	 * and no code is generated, and the header of the file has just the fingerprint of the code,
+	 * which makes it suitable for many small files with similar contents. Files encoded with it
+	 * can be decoded by this object or by one whose cache has the code.
+	 * @param trained is the code (null to generate a code for each file)
+	 */
+	public void setTable(TrainedTable trained) {
+		this.trained = trained;
+	}
+	
+	
+	/**
+	 * Sets the cache of pre-trained codes used to decode files encoded with them
+	 * @param cache is the cache (null if none)
+	 */
+	public void setTableCache(TableCache cache) {
+		this.cache = cache;
+	}
+	
+	
+	/**
+	 * Sets whether files are encoded with adaptive codes, in a single pass: the code starts
+	 * with 8 bits per byte and is rebuilt after each frame of symbols (see AdaptiveModel), in
+	 * the same way by the decoder, so the file has no code in its header. Files encoded so can
+	 * be decoded by any object, but only a frame after another (not in parallel), and there is
+	 * no code left for the statistics or for messages in memory. encodeParallel() and
+	 * pre-trained codes ignore this setting.
+	 * @param adaptive is whether files are encoded with adaptive codes
+	 */
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+	
+	
+	/**
+	 * Sets the alphabet of the symbols into which files are split before encoding them: bytes
+	 * (the default), pairs of bytes, or UTF-8 characters (see Alphabet). Wider symbols capture
+	 * some of the dependence between consecutive bytes (e.g., in text) at the expense of a
+	 * larger header. Codes for them are always canonical. encodeParallel() encodes such files
+	 * sequentially, and pre-trained and adaptive codes ignore this setting.
+	 * @param alphabet is the alphabet
+	 */
+	public void setAlphabet(Alphabet alphabet) {
+		this.alphabet = alphabet;
+	}
+	
+	
+	/**
+	 * Sets whether files are encoded as interleaved streams: each block of BlockSize bytes is
+	 * split into 4 bitstreams (the i-th byte goes to stream i % 4), which the decoder reads
+	 * at once, a byte of each per iteration, so that the CPU overlaps their lookups. This
+	 * takes 16 more bytes per block. encodeParallel(), wider alphabets and context models
+	 * ignore this setting.
+	 * @param interleaved is whether files are encoded as interleaved streams
+	 */
+	public void setInterleaved(boolean interleaved) {
+		this.interleaved = interleaved;
+	}
+	
+	
+	/**
+	 * Sets whether files are encoded with order-1 context models: each byte is encoded with
+	 * a code chosen by the byte before it, frequent bytes having a code of their own after
+	 * them and rare ones sharing a single code (see ContextModel). This captures most of the
+	 * dependence between consecutive bytes of text at the expense of a larger header. Files
+	 * encoded so are decoded sequentially, and there is no single code left for messages in
+	 * memory. encodeParallel(), pre-trained and adaptive codes and wider alphabets ignore
+	 * this setting.
+	 * @param contextModeled is whether files are encoded with order-1 context models
+	 */
+	public void setContextModeled(boolean contextModeled) {
+		this.contextModeled = contextModeled;
+	}
+	
+	
+	/**
+	 * Sets whether the blocks of BlockSize bytes of files that the code does not compress
+	 * (by at least 1/32) are stored raw, or as a single byte if they are a run of it (see
+	 * TypedBlocks): the length of the encoding of each block is computed from its histogram
+	 * before encoding it, so such blocks (e.g., random or already compressed data) cost a
+	 * copy rather than an encoding, both to encode and to decode. This takes 1 more byte per
+	 * block (5 for blocks encoded as a single bitstream), and 1 more byte of header. Coded
+	 * blocks can also be interleaved streams. encodeParallel() and wider alphabets ignore
+	 * this setting (as do adaptive codes and context models), and files with typed blocks are
+	 * decoded sequentially.
+	 * @param rawBlocks is whether blocks not worth encoding are stored raw
+	 */
+	public void setRawBlocks(boolean rawBlocks) {
+		this.rawBlocks = rawBlocks;
+	}
+	
+	
+	/**
+	 * Sets the listener that receives the metrics of the files encoded and decoded: the time
+	 * spent in each phase (counting, generating the code, the header, and the pass over the
+	 * bitstream), the size and time of each block, and the bytes read and written (see
+	 * CodecListener). Ranges of files are not measured, and nothing is timed without a
+	 * listener.
+	 * @param listener is the listener (null if none)
+	 */
+	public void setListener(CodecListener listener) {
+		this.listener = listener;
+	}
+	
+	
+	/**
+	 * Sets how many blocks of BlockSize bytes of a file are counted to estimate its frequencies:
+	 * 1 of every sampling blocks, evenly spread over the file, so the first pass over huge
+	 * files reads just a fraction of them. Bytes missed by the sample are given a frequency
+	 * of 1, so that every byte has an encoding, and codes are always canonical while sampling
+	 * (the header has the size of the file, which sampled frequencies do not add up to).
+	 * The exact frequencies may also be counted while encoding, so that the statistics report
+	 * how much longer the message is than with them (see getSamplingLoss), which takes about
+	 * as long as the pass saved on files already in memory. encodeParallel(), pre-trained and
+	 * adaptive codes, wider alphabets and context models count every symbol.
+	 * @param sampling is the number of blocks per block counted (1 to count every block)
+	 * @param loss is whether the exact frequencies are counted while encoding
+	 */
+	public void setSampling(int sampling, boolean loss) {
+		if (sampling < 1)
+			throw new RuntimeException("The sampling of blocks must be at least 1 (every block counted)");
+		this.sampling = sampling;
+		this.samplingLoss = loss;
 	}
 	
 	
@@ -48,26 +280,25 @@ public class HuffmanCode {
 	{
 		String output;
 		int n = text.length();
-		Map <Character, Integer> freq = new Hashtable<Character, Integer>();	
+		int max = 0;
+		Histogram freq;	
 		
 		// First pass: get frequencies
-		for (int i=0; i<n; i++) {
-			Character c = text.charAt(i);			// gets next symbol
-			if (freq.containsKey(c)) 
-				freq.put(c, freq.get(c) + 1);		// update count of known symbol
-			else
-				freq.put(c, 1);						// new symbol added
-		}
+		for (int i=0; i<n; i++)
+			max = Math.max(max, text.charAt(i));	// the alphabet goes up to the largest symbol
+		freq = new Histogram(max+1);
+		freq.add(text);
 		
 		// generate the code using the frequencies
 		generate(freq);
 		
 		// Second pass: encode the input using the codes generated before
-		output = "";
+		StringBuilder bits = new StringBuilder();
 		for (int i=0; i<n; i++) {
 			Character c = text.charAt(i);			// gets next symbol and...
-			output = output + tableEncoding.get(c);	// ... adds its encoding
+			bits.append(tableEncoding.toBinaryString(c));	// ... adds its encoding
 		}
+		output = bits.toString();
 		
 		return output;
 	}
@@ -83,81 +314,398 @@ public class HuffmanCode {
 	
 	public void encode (String input, String output) throws IOException, FileNotFoundException 
 	{
-		FileInputStream inFile;
-		FileOutputStream outStream;
-		Map <Character, Integer> freq = new Hashtable<Character, Integer>();	
-		int b;
+		long start = clock();
+		InputFile inFile = new InputFile(input);	// loads (or maps) the input file just once
+		FileChannel outFile = openOutput(output);	// opens output file
+		
+		encode(inFile.regions(), inFile.size(), outFile);
+		done(Phase.Encode, inFile.size(), outFile.size(), start);
+		inFile.close();								// closes input and output files
+		outFile.close();
+	}
+	
+	/**
+	 * Encodes a message (e.g., a file loaded in memory) in the format of encoded files
+	 * @param regions are the buffers with the message, one after the other (not consumed)
+	 * @param size is the number of bytes of the message
+	 * @param out is the output channel
+	 * @throws IOException
+	 */
+	void encode(ByteBuffer[] regions, long size, WritableByteChannel out) throws IOException
+	{
+		BitWriter bits;
+		Histogram freq = new Histogram(alphabet.size());
+		byte[] block = new byte[BlockSize];			// bytes read from the message
+		int[] symbols = (alphabet == Alphabet.Bytes) ? null : new int[BlockSize];	// wider symbols
+		Histogram exact = null;						// exact frequencies (if sampled)
+		long t = clock();							// (the start of each phase)
+		long p;
+		
+		blockTypes = null;
+		if (adaptive && trained == null) {
+			encodeAdaptive(regions, out, block);
+			lap(Phase.Encode, t);
+			return;
+		}
+		if (contextModeled && trained == null && alphabet == Alphabet.Bytes) {
+			encodeContext(regions, out, block);
+			return;
+		}
 		
 		/*
-		 *  First pass: get frequencies
+		 *  First pass: get frequencies (unless the code is pre-trained)
 		 */
-		inFile = new FileInputStream(input);		// opens input file
-		b = inFile.read();							// gets a symbol from the file
-		while (b != -1) {							// while not end of file
-			char c = (char)b;
-			if (freq.containsKey(c)) 				// update count of symbol read
-				freq.put(c, freq.get(c) + 1);
+		messageBytes = size;
+		if (trained == null) {
+			if (symbols == null && sampling > 1) {	// just some blocks (and the exact
+				sample(regions, freq, block);		// frequencies while encoding, if asked)
+				exact = samplingLoss ? new Histogram(alphabet.size()) : null;
+			}
+			else if (symbols == null)
+				for (ByteBuffer region : regions)
+					count(region.duplicate(), freq, block);
+			else
+				alphabet.split(regions, block, symbols, freq::add);
+			t = lap(Phase.Count, t);
+		
+			/*
+			 *  generate the code using the frequencies
+			 */
+			generate(freq);
+			t = lap(Phase.Generate, t);
+		}
+		else
+			useTrained();
+				
+		/*
+		 *  Second pass: encode the input using the codes generated before
+		 */
+		bits = new BitWriter(out);
+		writeHeader(bits, flags(false), size);		// write header with huffman code info
+		t = lap(Phase.Header, t);
+		p = bits.position();
+		if ((flags(false) & (Interleaved | Typed)) != 0)
+			encodeBlocks(regions, bits, block, exact, flags(false));
+		else {
+			if (symbols == null || trained != null)
+				for (ByteBuffer region : regions)	// re-starts reading from the same buffers
+					encode(region.duplicate(), tableEncoding, bits, block, exact);
 			else
-				freq.put(c, 1);
-			b = inFile.read();						// gets new symbol
+				alphabet.split(regions, block, symbols, (s, n) -> encode(s, n, tableEncoding, bits));
+			block(Phase.Encode, size, bits.position() - p, t);	// a single block
+		}
+		bits.flush();								// writes any bits that might be left in the writer
+		lap(Phase.Encode, t);
+		written(p / 8, 0, bits.position() / 8);
+		if (symbols == null && trained == null && sampling > 1) {	// the statistics are those of
+			sample = frequencies;									// the message, if counted
+			frequencies = exact;
+			tree = null;
+		}
+	}
+	
+	/**
+	 * Encodes a file using all the threads of the common fork/join pool.
+	 * The file is split into chunks whose frequencies are counted concurrently; then the chunks
+	 * are encoded concurrently, each into its own bitstream, and written one after the other
+	 * followed by an index of the chunks, so that they can be located and decoded independently.
+	 * Files are split into symbols wider than bytes sequentially (with encode()).
+	 * @param input is the name of the input file
+	 * @param output is the name of the output file
+	 * @throws IOException
+	 */
+	public void encodeParallel(String input, String output) throws IOException
+	{
+		InputFile inFile;
+		FileChannel outFile;
+		BitWriter bits;
+		ParallelEncoder chunks;
+		BlockIndex index;
+		long start;
+		long t0 = clock(), t = t0;					// (the start of each phase)
+		
+		if (alphabet != Alphabet.Bytes && trained == null) {
+			encode(input, output);
+			return;
 		}
 		
 		/*
-		 *  generate the code using the frequencies
+		 *  First pass: get frequencies of each chunk and merge them (unless the code is pre-trained)
 		 */
-		generate(freq);
-				
+		inFile = new InputFile(input);
+		chunks = new ParallelEncoder(inFile, ForkJoinPool.commonPool());
+		if (trained == null) {
+			Histogram freq = chunks.count();
+			t = lap(Phase.Count, t);
+			generate(freq);
+			t = lap(Phase.Generate, t);
+		}
+		else
+			useTrained();
+		
 		/*
-		 *  Second pass: encode the input using the codes generated before
+		 *  Second pass: encode batches of chunks and stitch them together
 		 */
-		outStream = new FileOutputStream(output);	// opens output file
-		writeHeader(outStream);						// write header with huffman code info
-		clearBuffer();								// prepares the buffer for starting the encoding
-		inFile.close();								// closes the input file...
-		inFile = new FileInputStream(input);		// ...and reopens it to re-start reading it.
-		b = inFile.read();							// gets a symbol from the file
-		while (b != -1) {							// while not end of file
-			writeBits(outStream, 					// write encoded symbol as a stream of bits
-					  tableEncoding.get((char)b));
-			b = inFile.read();						// gets new symbol
-		}
-		flushBuffer(outStream);						// writes any bits that might be left in the buffer
-		inFile.close();								// closes input and output files
-		outStream.close();
+		outFile = openOutput(output);
+		bits = new BitWriter(outFile);
+		writeHeader(bits, flags(true), inFile.size());
+		t = lap(Phase.Header, t);
+		start = bits.position();
+		index = new BlockIndex(start / 8);
+		for (int first = 0; first < chunks.chunks(); first += chunks.batch()) {
+			int last = Math.min(first + chunks.batch(), chunks.chunks());
+			byte[][] encoded = chunks.encode(tableEncoding, first, last);
+			for (int i = first; i < last; i++) {
+				index.add(bits.position() - start, chunks.symbols(i));
+				bits.writeBytes(encoded[i - first], 0, encoded[i - first].length);
+				if (listener != null)				// (encoded concurrently, not timed)
+					listener.block(Phase.Encode, chunks.symbols(i), 8L * encoded[i - first].length, 0);
+			}
+		}
+		index.write(bits, bits.position() / 8);		// the index goes after the message
+		bits.flush();
+		lap(Phase.Encode, t);
+		written(start / 8, index.size(), bits.position() / 8);
+		done(Phase.Encode, inFile.size(), outFile.size(), t0);
+		inFile.close();
+		outFile.close();
 	}
 	
 	/**
-	 * Decodes a file encoded with huffman codes
+	 * Decodes a file encoded with huffman codes (with or without an index of blocks)
 	 * @param input is the name of the input file
 	 * @param output is the name of the output file
 	 * @throws IOException, FileNotFoundException 
 	 */
 	public void decode(String input, String output) throws IOException, FileNotFoundException {
-		FileInputStream inFile;
-		FileOutputStream outStream;
-		Map <Character, Integer> freq;	
-		int c;
-		int total;
-
-		inFile = new FileInputStream(input);
-		// Reads the header
-		freq = readHeader(inFile);
+		InputFile inFile;
+		FileChannel outFile;
+		BlockIndex index;
+		byte[] block = new byte[BlockSize];			// decoded symbols waiting to be written
+		long start = clock(), t;
+
+		inFile = new InputFile(input);
+		// Reads the header, generates the code and builds its lookup tables
+		index = readBlocks(inFile);
+		t = lap(Phase.Header, start);
+
+		// decode the input using the lookup tables
+		outFile = openOutput(output);
+		if (context != null || fileAlphabet != Alphabet.Bytes) {	// a single block with a code
+			if (context != null)									// per context, or of wider symbols
+				decodeContext(index.reader(inFile, 0), messageBytes, block, (b, n) -> write(outFile, b, n));
+			else
+				fileAlphabet.decode(decoder, index.reader(inFile, 0), messageBytes, block,
+									(b, n) -> write(outFile, b, n));
+			block(Phase.Decode, messageBytes, 0, t);
+		}
+		else
+			for (int i = 0; i < index.blocks(); i++) {
+				long b = clock();
+				if (model != null)
+					write(outFile, block, decodeFrame(inFile, index, i, block));
+				else if ((fileFlags & Typed) != 0)
+					write(outFile, block, decodeTyped(inFile, index, i, block));
+				else if ((fileFlags & Interleaved) != 0)
+					write(outFile, block, decodeInterleaved(inFile, index, i, block));
+				else
+					decode(decoder, index.reader(inFile, i), index.symbols(i), outFile, block);
+				block(Phase.Decode, index.symbols(i), 0, b);
+			}
+		lap(Phase.Decode, t);
+		done(Phase.Decode, inFile.size(), outFile.size(), start);
+		inFile.close();
+		outFile.close();		
+	}
+	
+	/**
+	 * Decodes a file using all the threads of the common fork/join pool.
+	 * The blocks of a file with an index are decoded concurrently (a file without an index is
+	 * a single block).
+	 * @param input is the name of the input file
+	 * @param output is the name of the output file
+	 * @throws IOException
+	 */
+	public void decodeParallel(String input, String output) throws IOException {
+		InputFile inFile;
+		FileChannel outFile;
+		BlockIndex index;
+		long start = clock(), t;
+
+		inFile = new InputFile(input);
+		index = readBlocks(inFile);
+		if (model != null || fileAlphabet != Alphabet.Bytes || context != null || blockTypes != null) {
+			inFile.close();						// each frame needs the ones before, a single block,
+												// or typed blocks
+			decode(input, output);
+			return;
+		}
+		t = lap(Phase.Header, start);
+		outFile = openOutput(output);
+		new ParallelDecoder(inFile, index, decoder, (fileFlags & Interleaved) != 0, listener, ForkJoinPool.commonPool())
+			.decode(outFile);
+		lap(Phase.Decode, t);
+		done(Phase.Decode, inFile.size(), outFile.size(), start);
+		inFile.close();
+		outFile.close();
+	}
+	
+	/**
+	 * Decodes a range of the original file.
+	 * Only the blocks that hold the range are decoded (a file without an index is a single block),
+	 * except in files with adaptive codes, wider symbols or context models, which are decoded
+	 * from the start
+	 * (and blocks of interleaved streams are decoded whole).
+	 * @param input is the name of the input file
+	 * @param from is the position of the first byte of the range in the original file
+	 * @param length is the number of bytes of the range
+	 * @return the bytes of the range
+	 * @throws IOException
+	 */
+	public byte[] decode(String input, long from, int length) throws IOException {
+		InputFile inFile;
+		BlockIndex index;
+		byte[] range = new byte[length];
+		int n;
+
+		inFile = new InputFile(input);
+		index = readBlocks(inFile);
+		if (from < 0 || length < 0 || from + length > index.totalSymbols()) {
+			inFile.close();
+			throw new IndexOutOfBoundsException("Range [" + from + ", " + (from + length) + 
+												") outside the original file of " + index.totalSymbols() + " bytes");
+		}
 		
-		// generate the code using the frequencies
-		generate(freq);
+		n = 0;
+		if (fileAlphabet != Alphabet.Bytes || context != null) {	// a single block of wider
+			long[] p = {0};										// symbols, or with a code per context
+			Alphabet.ByteSink sink = (b, m) -> {				// (p: position of the bytes decoded)
+				long first = Math.max(from, p[0]);
+				if (first < p[0] + m)
+					System.arraycopy(b, (int) (first - p[0]), range, (int) (first - from), (int) (p[0] + m - first));
+				p[0] += m;
+			};
+			if (context != null)
+				decodeContext(index.reader(inFile, 0), from + length, new byte[BlockSize], sink);
+			else
+				fileAlphabet.decode(decoder, index.reader(inFile, 0), from + length, new byte[BlockSize], sink);
+			inFile.close();
+			return range;
+		}
+		if (model != null || (fileFlags & (Interleaved | Typed)) != 0) {	// whole blocks (each frame
+			byte[] block = new byte[BlockSize];							// of an adaptive code needs
+			for (int i = (model != null) ? 0 : index.find(from); n < length; i++) {	// the ones before)
+				int m = (model != null) ? decodeFrame(inFile, index, i, block) :
+						((fileFlags & Typed) != 0) ? decodeTyped(inFile, index, i, block) :
+													 decodeInterleaved(inFile, index, i, block);
+				long skip = Math.max(0, from - index.first(i));
+				if (skip < m) {
+					System.arraycopy(block, (int) skip, range, n, (int) Math.min(length - n, m - skip));
+					n += (int) Math.min(length - n, m - skip);
+				}
+			}
+			inFile.close();
+			return range;
+		}
+		for (int i = index.find(from); n < length; i++) {
+			BitReader bits = index.reader(inFile, i);
+			long skip = Math.max(0, from - index.first(i));		// only in the first block
+			for (long k = 0; k < skip; k++)
+				decoder.decode(bits);
+			int m = (int) Math.min(length - n, index.symbols(i) - skip);
+			decode(decoder, bits, range, n, m);
+			checkEnd(bits);
+			n += m;
+		}
+		inFile.close();
 		
-		// determines the length of the decoded file
-		total = getMessageSize();
+		return range;
+	}
+	
+	
+	/**
+	 * Encodes a message in memory with the current code: the pre-trained one, if set, or else
+	 * the one of the last file encoded or decoded. The encoded message has its number of
+	 * symbols (4 bytes) followed by their encodings. Nothing is allocated once the code is set.
+	 * This object is not thread-safe: threads should share the codec of the code instead.
+	 * @param src is an array with the message
+	 * @param off is the position of the first byte of the message
+	 * @param len is the number of bytes of the message
+	 * @param dst is the array in which the encoded message is written, from its first position
+	 * (see maxEncodedSize)
+	 * @return the number of bytes written
+	 * @throws IndexOutOfBoundsException if dst is too small
+	 * @throws RuntimeException if there is no code, or some byte has no encoding in it
+	 */
+	public int encode(byte[] src, int off, int len, byte[] dst) {
+		return encode(src, off, len, dst, 0);
+	}
+	
+	/**
+	 * Encodes a message in memory with the current code (see encode(byte[], int, int, byte[]))
+	 * @param src is an array with the message
+	 * @param off is the position of the first byte of the message
+	 * @param len is the number of bytes of the message
+	 * @param dst is the array in which the encoded message is written
+	 * @param dstOff is the position of the first byte written
+	 * @return the number of bytes written
+	 * @throws IndexOutOfBoundsException if dst is too small
+	 * @throws RuntimeException if there is no code, or some byte has no encoding in it
+	 */
+	public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		return codec().encode(src, off, len, dst, dstOff);
+	}
+	
+	/**
+	 * Encodes a message in memory with the current code (see encode(byte[], int, int, byte[]))
+	 * @param src is the message, from its position to its limit (consumed)
+	 * @param dst is the buffer in which the encoded message is written (heap or direct)
+	 * @return the number of bytes written
+	 * @throws java.nio.BufferOverflowException if dst is too small
+	 * @throws RuntimeException if there is no code, or some byte has no encoding in it
+	 */
+	public int encode(ByteBuffer src, ByteBuffer dst) {
+		return codec().encode(src, dst);
+	}
+	
+	/**
+	 * Decodes a message encoded in memory with the current code. Nothing is allocated once
+	 * the code is set and its decoding tables are built.
+	 * @param src is the encoded message, from its position (which is left right after it)
+	 * @param dst is the buffer in which the message is written (heap or direct)
+	 * @return the number of bytes written
+	 * @throws java.nio.BufferOverflowException if dst is too small
+	 * @throws RuntimeException if there is no code
+	 */
+	public int decode(ByteBuffer src, ByteBuffer dst) {
+		return codec().decode(src, dst);
+	}
+	
+	/**
+	 * Returns an immutable codec of messages in memory with the current code, which can be
+	 * shared by any number of threads (unlike this object, which keeps the state of the files
+	 * being encoded or decoded)
+	 * @return the codec
+	 * @throws RuntimeException if there is no code
+	 */
+	public HuffmanCodec codec() {
+		CodeTable table = code();
 
-		// decode the input using the codes generated before
-		outStream = new FileOutputStream(output);
-		clearBuffer();
-		for (int i=0; i<total; i++) {
-			c = getSymbol(inFile, tree);
-			outStream.write((char)c);
+		if (codec == null || codec.table() != table) {
+			codec = (decoder == null) ? new HuffmanCodec(table) : new HuffmanCodec(table, decoder);
+			decoder = codec.decoder();
 		}
-		inFile.close();
-		outStream.close();		
+		return codec;
+	}
+	
+	/**
+	 * Returns the maximum size of a message encoded in memory with the current code
+	 * @param len is the number of bytes of the message
+	 * @return the maximum number of bytes of the encoded message
+	 * @throws RuntimeException if there is no code, or the size does not fit in an array
+	 */
+	public int maxEncodedSize(int len) {
+		return codec().maxEncodedSize(len);
 	}
 	
 	
@@ -168,23 +716,49 @@ public class HuffmanCode {
 	 */
 	public void printStats()
 	{
-		int min, max, l, total, n;
-		String s;
+		int min, max, l, n;
+		long total;
 		DecimalFormatSymbols symb = new DecimalFormatSymbols();
 		symb.setDecimalSeparator('.');
 		DecimalFormat f = new DecimalFormat("#.00", symb);
 		
+		if (context != null) {			// a code per context
+			printContextStats(f);
+			return;
+		}
+		if (tableEncoding == null) {	// an adaptive code, which changes along the file
+			System.out.println("Adaptive code:           rebuilt after each frame (of up to " + HuffmanOutputStream.BlockSize + " symbols)");
+			return;
+		}
+		if (alphabet != Alphabet.Bytes && frequencies != null)
+			System.out.println("Alphabet:                " + alphabet + " (" + alphabet.size() + " symbols)");
+		if (blockTypes != null)
+			System.out.println("Block types:             " + TypedBlocks.toString(blockTypes) + 
+							   " (" + typedBytes + " bytes; the sizes below are for coding every block)");
+		if (tree() == null) {		// a pre-trained code, or one read from just the code lengths
+			System.out.println("Number of symbols:       " + tableEncoding.size());
+			System.out.println("Max. encoding lenght:    " + tableEncoding.maxLength() + " bits");
+			if (trained != null)
+				System.out.println("Pre-trained code:        " + String.format("%016x", trained.fingerprint()));
+			if (sample != null)
+				System.out.println("Sampled frequencies:     1 of every " + sampling + " blocks (exact ones not counted)");
+			return;
+		}
+		if (getMessageSize() == 0) {	// an empty message (there are no lengths to average)
+			System.out.println("Number of symbols:       0");
+			System.out.println("Encoded file size:       " + getEncodedFileSize() + " bytes (header only)");
+			return;
+		}
 		min = Integer.MAX_VALUE;
 		max = 0;
-		for (Entry<Character, String> entry : tableEncoding.entrySet()) {
-	        s = entry.getValue();
-	        l = s.length();
+		for (int i = 0; i < tableEncoding.size(); i++) {
+	        l = tableEncoding.length(tableEncoding.symbol(i));
 	        if (l > max)
 	        	max = l;
 	        if (l < min)
 	        	min = l;
 		}
-		total = getTotalLength(tree, tableEncoding);
+		total = getTotalLength(tree(), tableEncoding);
 		n = tableEncoding.size();
 		
 		System.out.println("Number of symbols:       " + n);
@@ -193,58 +767,115 @@ public class HuffmanCode {
 		System.out.println("Avg. encoding lenght:    " + f.format(((double)total/(double)getMessageSize())) + " bits");
 		System.out.println("Message entropy:         " + f.format(getMessageEntropy()) + " bits");
 		System.out.println("Message encoding lenght: " + total + " bits");
-		System.out.println("Encoded file size:       " + getEncodedFileSize()  + " bytes (" + (getHeaderSize() + " [header] + " + (getTotalLength()+7)/8) + " [message])");
-		System.out.println("Gross space saving:      " + f.format((100-100*(double)((getTotalLength()+7)/8)/(double)getMessageSize())) + "%");
-		System.out.println("Net space saving:        " + f.format((100-100*(double)getEncodedFileSize()/(double)getMessageSize())) + "%");
+		System.out.println("Encoded file size:       " + getEncodedFileSize()  + " bytes (" + getHeaderSize() + " [header] + " + 
+						   (getEncodedFileSize() - getHeaderSize() - footerBytes) + " [message]" + 
+						   ((footerBytes > 0) ? " + " + footerBytes + " [index])" : ")"));
+		System.out.println("Gross space saving:      " + f.format((100-100*(double)((getTotalLength()+7)/8)/(double)bytes())) + "%");
+		System.out.println("Net space saving:        " + f.format((100-100*(double)getEncodedFileSize()/(double)bytes())) + "%");
+		if (sample != null)
+			System.out.println("Sampled frequencies:     1 of every " + sampling + " blocks (" + 
+							   f.format(100*getSamplingLoss()) + "% longer than with exact frequencies, " + 
+							   getExactLength() + " bits)");
+		if (maxCodeLength > 0) {
+			long unlimited = getTotalLength(tree(), new CodeTable(tree()));
+			System.out.println("Encoding lenght limit:   " + maxCodeLength + " bits (" + 
+							   f.format(100*(double)(total-unlimited)/(double)unlimited) + "% longer than unlimited huffman, " + 
+							   unlimited + " bits)");
+		}
 	}
 	
 	
 	/**
 	 * 
-	 * @return the entropy (in bits) of the input message
+	 * @return the entropy (in bits) of the input message (-1 if unknown: pre-trained codes and
+	 * codes read from just their lengths come without the frequencies)
 	 */
 	public double getMessageEntropy()
 	{
-		return getMessageEntropy(tree, getMessageSize())/Math.log(2); 
+		if (tree() == null)
+			return -1;
+		return getMessageEntropy(tree(), getMessageSize())/Math.log(2); 
 	}
 
 	/**
-	 * Recursively computes the entropy (in natural units) of the input message
+	 * Computes the entropy (in natural units) of the input message, adding up the terms of
+	 * the leaves of each subtree (children before parents)
 	 * @param T is the huffman tree
 	 * @param t is the total length of the message
-	 * @return
+	 * @return the entropy (0 if the message is empty)
 	 */
-	private double getMessageEntropy(HuffmanTree T, int t) {
-		double e;		
+	private double getMessageEntropy(HuffmanTree T, long t) {
+		double[] e = new double[T.size()];		// entropy of each subtree
 		
-		if (T.isLeaf()) {
-			double p = (double)T.getFrequency()/(double)t;
-			e = -p*Math.log(p);
-		}
-		else
-			e = getMessageEntropy(T.left(), t) + getMessageEntropy(T.right(), t);
+		if (T.size() == 0)
+			return 0;
+		for (int i = 0; i < T.size(); i++)
+			if (T.isLeaf(i)) {
+				double p = (double)T.frequency(i)/(double)t;
+				e[i] = -p*Math.log(p);
+			}
+			else
+				e[i] = e[T.left(i)] + e[T.right(i)];
 		
-		return e;
+		return e[T.root()];
+	}
+
 
+	/**
+	 * Determines how much longer the message is with the code from sampled frequencies
+	 * (see setSampling) than with an optimal code (within the same maximum length) from
+	 * the exact frequencies
+	 * @return the increase in the length of the message, as a fraction of the exact one
+	 * (0 if the frequencies were not sampled, or the exact ones were not counted)
+	 */
+	public double getSamplingLoss()
+	{
+		long exact;
+
+		if (sample == null || frequencies == null)
+			return 0;
+		exact = getExactLength();
+		return (exact == 0) ? 0 : (double)(getTotalLength() - exact)/(double)exact;
 	}
 
 
 	/**
 	 * 
-	 * @return the size in bytes of the input message
+	 * @return the size in bytes of the input message (in symbols, if wider than bytes; -1 if
+	 * unknown: the number of wider symbols of a file decoded with just their code lengths)
 	 */
-	public int getMessageSize()
+	public long getMessageSize()
 	{
-		return tree.getFrequency(); // the root of the tree has the total count of symbols
+		if (tree() != null)
+			return tree().getFrequency(); // the root of the tree has the total count of symbols
+		return (fileAlphabet == Alphabet.Bytes) ? messageBytes : -1;	// the size in the header
 	}
 	
 	
 	/**
-	 * Determines the size of the header with the information required to reconstruct the code.
+	 * Determines the size of the header with the information required to reconstruct the code:
+	 * that of the last file encoded or decoded with the current code, or else the one that a
+	 * file encoded with the current settings would have.
 	 * @return the size in bytes of the file header
 	 */
 	public int getHeaderSize() {
-		return 2*BytesPerInt + tableEncoding.size()*(1+bytesRequired(tree));
+		if (headerBytes >= 0)
+			return (int) headerBytes;
+		if (trained != null) {
+			int k = 0;
+			for (long t = getMessageSize(); t > 0; t >>>= 8)
+				k++;
+			return BytesPerInt + 2 + 8 + 1 + k;
+			// 1 int for the mark + 1 byte for the version + 1 byte for the flags + fingerprint +
+			// + 1 byte for the number of bytes of the size of the message + that size
+		}
+		if (alphabet != Alphabet.Bytes)
+			return BytesPerInt + 3 + new CanonicalHeader(tableEncoding, bytes()).size();
+			// the same as below + 1 byte for the alphabet
+		if (canonical || maxCodeLength > 0 || sampling > 1)
+			return BytesPerInt + 2 + new CanonicalHeader(tableEncoding, getMessageSize()).size();
+			// 1 int for the mark + 1 byte for the version + 1 byte for the flags + code lengths
+		return 2*BytesPerInt + tableEncoding.size()*(1+bytesRequired(tree()));
 		// 1 int for the number of symbols + 1 int for the number of bytes per frequency value +
 		// + number of symbols * (1 byte for the symbol + required bytes per frequency).
 	}
@@ -252,10 +883,16 @@ public class HuffmanCode {
 
 	/**
 	 * 
-	 * @return filesize in bytes including header
+	 * @return filesize in bytes including header (and footer): that of the last file encoded
+	 * or decoded with the current code, or else its estimate (-1 if the length of the message
+	 * is unknown, see getTotalLength)
 	 */
-	public int getEncodedFileSize()
+	public long getEncodedFileSize()
 	{
+		if (headerBytes >= 0)
+			return fileBytes;
+		if (getTotalLength() < 0)
+			return -1;
 		return (getHeaderSize() + (getTotalLength()+7)/8);
 		// the size of the header + message encoding length rounded up in bytes
 	}
@@ -263,11 +900,14 @@ public class HuffmanCode {
 
 	/**
 	 * 
-	 * @return the number of bits needed to encode the message
+	 * @return the number of bits needed to encode the message (-1 if unknown: pre-trained
+	 * codes and codes read from just their lengths come without the frequencies)
 	 */
-	public int getTotalLength()
+	public long getTotalLength()
 	{
-		return getTotalLength(tree, tableEncoding);
+		if (tree() == null)
+			return -1;
+		return getTotalLength(tree(), tableEncoding);
 	}
 		
 	
@@ -278,10 +918,10 @@ public class HuffmanCode {
 	{
 		String output;
 		
-		if (tree == null)
+		if (tree() == null)
 			output = "";
 		else
-			output = tree.toString() + "\n\n" + tableEncoding.toString();
+			output = tree().toString() + "\n\n" + tableEncoding.toString();
 		
 		return output;
 	}
@@ -295,123 +935,793 @@ public class HuffmanCode {
 
 	
 	/**
-	 * Generates the code
-	 * @param frequencies is a map with the frequency of each symbol
+	 * Generates the code. Canonical codes are generated from their lengths, without a tree
+	 * (which is built only if needed for the statistics)
+	 * @param frequencies is a histogram with the frequency of each symbol
 	 */
-	private void generate(Map<Character, Integer> frequencies) {
-		PriorityQueue<HuffmanTree> treeList = new PriorityQueue<HuffmanTree>(frequencies.size());
-		TreeSet<Character> elements = new TreeSet<Character>(frequencies.keySet());
+	void generate(Histogram frequencies) {
+        this.frequencies = frequencies;
+        this.tree = null;
+        this.decoder = null;									// built when needed
+        this.context = null;
+        this.sample = null;
+        this.headerBytes = -1;									// (until a file is written)
+        
+        if (maxCodeLength > 0)									// limited lengths, canonical codes
+        	this.tableEncoding = new CodeTable(PackageMerge.lengths(frequencies, maxCodeLength));
+        else if (canonical || alphabet != Alphabet.Bytes || sampling > 1)	// optimal lengths,
+        	this.tableEncoding = new CodeTable(HuffmanLengths.lengths(frequencies));	// canonical codes
+        else
+        	this.tableEncoding = new CodeTable(tree());
+	}
 
-		for (Character c : elements)
-	        treeList.add(new HuffmanTree(c, frequencies.get(c)));
+	/**
+	 * Returns the number of bits of the message with an optimal code (within the maximum
+	 * length) from its exact frequencies
+	 */
+	private long getExactLength() {
+		int[] lengths = (maxCodeLength > 0) ? PackageMerge.lengths(frequencies, maxCodeLength)
+											: HuffmanLengths.lengths(frequencies);
 
-        mergeTrees(treeList);
-        this.tree = treeList.element();
-        
-        this.tableEncoding = traceTable(tree);
+		return getTotalLength(tree(), new CodeTable(lengths));
 	}
 
-	private void mergeTrees(PriorityQueue<HuffmanTree> treeList) {
-	    HuffmanTree left;
-	    HuffmanTree right;
-	    HuffmanTree merged;
+	/**
+	 * Returns the huffman tree of the frequencies of the message, building it if needed
+	 * @return the tree (null if the frequencies are unknown)
+	 */
+	private HuffmanTree tree() {
+		if (tree == null && frequencies != null)
+			tree = new HuffmanTree(frequencies);
+		return tree;
+	}
 
-        while (treeList.size() != 1){
-            left = treeList.poll();
-            right = treeList.poll();
-            merged = new HuffmanTree(left,right);
-            treeList.add(merged);
-        }
-    }
 
+	/**
+	 * Counts the symbols in a buffer, a block at a time
+	 * @param in is the input buffer (consumed)
+	 * @param freq is the histogram that is updated
+	 * @param block is a scratch array of bytes
+	 */
+	static void count(ByteBuffer in, Histogram freq, byte[] block) {
+		while (in.hasRemaining()) {
+			int n = Math.min(block.length, in.remaining());
+			in.get(block, 0, n);
+			freq.add(block, 0, n);
+		}
+	}
 
-    private HashMap<Character, String> traceTable(HuffmanTree huffmanTree) {
-    	HashMap<Character, String> encodings = new HashMap<>();
-    	
-    	splitOrMap(huffmanTree, encodings, "");
-    	
-    	return encodings;
-    	
+	/**
+	 * Counts the symbols in 1 of every sampling blocks of BlockSize bytes of a message (those
+	 * starting at multiples of sampling * BlockSize, whatever its regions), and gives a
+	 * frequency of 1 to the symbols missed
+	 * @param regions are the buffers with the message, one after the other (not consumed)
+	 * @param freq is the histogram that is updated
+	 * @param block is a scratch array of bytes
+	 */
+	private void sample(ByteBuffer[] regions, Histogram freq, byte[] block) {
+		long step = (long) sampling * BlockSize;	// distance between blocks counted
+		long base = 0;								// position of the region in the message
+
+		for (ByteBuffer region : regions) {
+			long end = base + region.remaining();
+			for (long b = base / step * step; b < end; b += step) {
+				long from = Math.max(b, base);
+				long to = Math.min(b + BlockSize, end);
+				if (from < to) {
+					ByteBuffer in = region.duplicate();
+					in.position(region.position() + (int) (from - base));
+					in.limit(region.position() + (int) (to - base));
+					count(in, freq, block);
+				}
+			}
+			base = end;
+		}
+		for (int c = 0; c < freq.alphabetSize(); c++)
+			if (freq.frequency(c) == 0)
+				freq.set(c, 1);
 	}
 
-    private void splitOrMap(HuffmanTree huffmanTree, HashMap<Character, String> encodings, String currentEncode) {
-    	if(huffmanTree.isLeaf()) {
-    		encodings.put(huffmanTree.getSymbol(), currentEncode);
-    	}
-    	else {
-    		splitOrMap(huffmanTree.left(), encodings, currentEncode + '0');
-    		splitOrMap(huffmanTree.right(), encodings, currentEncode + '1');
-    	}
+	/**
+	 * Encodes the symbols in a buffer, a block at a time
+	 * @param in is the input buffer (consumed)
+	 * @param table is the encoding of each symbol
+	 * @param out is the output stream of bits
+	 * @param block is a scratch array of bytes
+	 * @throws IOException
+	 */
+	static void encode(ByteBuffer in, CodeTable table, BitWriter out, byte[] block) throws IOException {
+		encode(in, table, out, block, null);
 	}
 
+	/**
+	 * Encodes the symbols in a buffer, a block at a time, and counts them
+	 * @param in is the input buffer (consumed)
+	 * @param table is the encoding of each symbol
+	 * @param out is the output stream of bits
+	 * @param block is a scratch array of bytes
+	 * @param freq is the histogram that is updated (null if none)
+	 * @throws IOException
+	 */
+	static void encode(ByteBuffer in, CodeTable table, BitWriter out, byte[] block, Histogram freq) throws IOException {
+		while (in.hasRemaining()) {
+			int n = Math.min(block.length, in.remaining());
+			in.get(block, 0, n);
+			if (freq != null)
+				freq.add(block, 0, n);
+			out.write(table, block, 0, n);
+		}
+	}
 
 	/**
-	 * Reads bits until a symbol can be determined
-	 * @param inFile is the input stream
-	 * @param T is the huffman tree
-	 * @return the symbol read (-1 if EOF)
-	 * @throws IOException 
+	 * Encodes some symbols
+	 * @param symbols is an array with the symbols
+	 * @param n is the number of symbols
+	 * @param table is the encoding of each symbol
+	 * @param out is the output stream of bits
+	 * @throws IOException
+	 */
+	static void encode(int[] symbols, int n, CodeTable table, BitWriter out) throws IOException {
+		for (int i=0; i<n; i++)
+			out.write(table.code(symbols[i]), table.length(symbols[i]));
+	}
+
+	/**
+	 * Decodes a number of symbols and writes them to a file, a block at a time
+	 * @param decoder is the decoding table
+	 * @param in is the input stream of bits
+	 * @param total is the number of symbols
+	 * @param outFile is the output file
+	 * @param block is a scratch array of bytes
+	 * @throws IOException
 	 */
-	private int getSymbol(FileInputStream inFile, HuffmanTree T) throws IOException {
-		char symbol = traverseTree(inFile, T);
+	private void decode(DecodeTable decoder, BitReader in, long total, FileChannel outFile, byte[] block) throws IOException {
+		ByteBuffer view = ByteBuffer.wrap(block);
+		int n = 0;
 
-		return symbol;
+		for (long i=0; i<total; i++) {
+			block[n++] = (byte) decoder.decode(in);
+			if (n == block.length || i == total-1) {
+				checkEnd(in);
+				view.clear().limit(n);
+				while (view.hasRemaining())
+					outFile.write(view);
+				n = 0;
+			}
+		}
 	}
 
+	/**
+	 * Writes some bytes to a file
+	 * @param outFile is the output file
+	 * @param block is an array with the bytes
+	 * @param n is the number of bytes
+	 * @throws IOException
+	 */
+	private static void write(FileChannel outFile, byte[] block, int n) throws IOException {
+		ByteBuffer view = ByteBuffer.wrap(block, 0, n);
 
+		while (view.hasRemaining())
+			outFile.write(view);
+	}
 
-	private char traverseTree(FileInputStream inFile, HuffmanTree tree) throws IOException {
-		boolean finishedTraversal = false;
-		HuffmanTree currentTree = tree;
-				
-		while(!finishedTraversal) {
-			prepareBuffer(inFile);
-			currentTree = nextSubTree(currentTree);
-			finishedTraversal = currentTree.isLeaf();
+	/**
+	 * Decodes a number of symbols into an array
+	 * @param decoder is the decoding table
+	 * @param in is the input stream of bits
+	 * @param block is the array in which symbols are stored
+	 * @param off is the position of the first symbol in the array
+	 * @param n is the number of symbols
+	 */
+	static void decode(DecodeTable decoder, BitReader in, byte[] block, int off, int n) {
+		for (int i=off; i<off+n; i++)
+			block[i] = (byte) decoder.decode(in);
+	}
+
+	/**
+	 * Checks that a stream of bits of a file has not been read past the end of the file
+	 * @param in is the input stream of bits
+	 * @throws IOException if it has (i.e., the file is truncated)
+	 */
+	static void checkEnd(BitReader in) throws IOException {
+		if (in.overrun())
+			throw new IOException("The encoded file is truncated");
+	}
+
+	/**
+	 * Reads the header of an encoded file (with or without an index of blocks) and generates
+	 * its code
+	 * @param inFile is the encoded file
+	 * @return the index of its blocks (a single block if the file has no index)
+	 * @throws IOException if the index is in an unknown version of the format, the file was
+	 * encoded with an unknown pre-trained code, or its headers are truncated or corrupt
+	 */
+	private BlockIndex readBlocks(InputFile inFile) throws IOException {
+		try {
+			return readLayout(inFile);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+				| NegativeArraySizeException e) {
+			throw new IOException("The headers of the encoded file are truncated or corrupt", e);
 		}
-		
-		return currentTree.root().getSymbol();
 	}
 
+	/**
+	 * Parses the headers of an encoded file for readBlocks(), which turns the exceptions of
+	 * reading past their end into IOExceptions
+	 */
+	private BlockIndex readLayout(InputFile inFile) throws IOException {
+		ByteBuffer header = inFile.regions()[0];
+		int flags = 0;								// a file without mark has just the frequencies
+		long total;
+		BlockIndex index;
 
-	private void prepareBuffer(FileInputStream inFile) throws IOException {		
-		if(buffer.equals("")) {
-			buffer = byteToBinary(inFile.read());
+		if (header.remaining() > BytesPerInt && readInt(header.duplicate(), BytesPerInt) == Magic) {
+			header.position(BytesPerInt);			// skips the mark...
+			int v = header.get() & 0xFF;			// ...and checks the version
+			if (v == 1)
+				flags = Indexed;					// version 1 had no flags
+			else if (v == Version)
+				flags = header.get() & 0xFF;
+			else if (v == WideVersion)
+				flags = readInt(header, 2);
+			else
+				throw new IOException("Unsupported version of the container format: " + v);
 		}
+		fileAlphabet = Alphabet.Bytes;
+		if ((flags & Symbols) != 0) {
+			int a = header.get() & 0xFF;
+			if (a >= Alphabet.values().length)
+				throw new IOException("Unsupported alphabet of symbols: " + a);
+			fileAlphabet = Alphabet.values()[a];
+		}
+		if ((flags & Streamed) != 0)
+			readInt(header, 2);						// skips the size of the code lengths
+		fileFlags = flags;
+		model = null;
+		context = null;
+		blockTypes = null;
+		if ((flags & Context) != 0) {				// reads the code of each context
+			context = ContextModel.read(new BitReader(header));
+			tableEncoding = null;
+			tree = null;
+			frequencies = null;
+			decoder = null;
+			total = context.total();
+		}
+		else if ((flags & Adaptive) != 0) {				// starts with the initial code
+			model = new AdaptiveModel();
+			tableEncoding = null;
+			tree = null;
+			frequencies = null;
+			decoder = model.decoder();
+			total = 0;								// (the frames tell the size)
+		}
+		else if ((flags & Trained) != 0) {				// looks the code up by its fingerprint
+			TrainedTable t = findTrained(readLong(header, 8));
+			tableEncoding = t.table();
+			tree = null;
+			frequencies = null;
+			decoder = t.decoder();					// its decoding tables are already built
+			total = readLong(header, header.get() & 0xFF);
+		}
+		else if ((flags & Canonical) != 0) {		// rebuilds the codes from their lengths
+			CanonicalHeader h = CanonicalHeader.read(new BitReader(header));
+			tableEncoding = h.table();
+			tree = null;
+			frequencies = null;
+			decoder = new DecodeTable(tableEncoding);
+			total = h.total();
+		}
+		else {
+			frequencies = readHeader(header);		// rebuilds the tree from the frequencies
+			tree = null;							// (whatever codes this object generates)
+			tableEncoding = new CodeTable(tree());
+			decoder = new DecodeTable(tableEncoding);
+			total = getMessageSize();
+		}
+		messageBytes = total;
+		if ((flags & Indexed) != 0)
+			index = BlockIndex.read(inFile, header.position());
+		else if ((flags & Streamed) != 0)
+			index = readFrames(inFile, header.position());
+		else if ((flags & Typed) != 0)
+			index = readTyped(inFile, header.position(), total);
+		else if ((flags & Interleaved) != 0)
+			index = readInterleaved(inFile, header.position(), total);
+		else {
+			index = new BlockIndex(header.position());
+			index.add(0, total);					// the whole message is a single block
+		}
+		written(header.position(), ((flags & Indexed) != 0) ? index.size() : 0, inFile.size());
+
+		return index;
 	}
 
+	/**
+	 * Decodes a frame of a file with an adaptive code, and updates the code with it
+	 * @param inFile is the encoded file
+	 * @param index is the index of its frames
+	 * @param i is the number of the frame (all the frames before must have been decoded)
+	 * @param block is the array in which symbols are stored
+	 * @return the number of symbols
+	 * @throws IOException if the file is truncated
+	 */
+	private int decodeFrame(InputFile inFile, BlockIndex index, int i, byte[] block) throws IOException {
+		int n = (int) index.symbols(i);				// (frames are small)
+		BitReader bits = index.reader(inFile, i);
 
-	private HuffmanTree nextSubTree(HuffmanTree current) {
-		HuffmanTree nextTree;
-		
-		if(buffer.charAt(0) == '0') {
-			nextTree = current.left();
-		}else {
-			nextTree = current.right();
+		decode(decoder, bits, block, 0, n);
+		checkEnd(bits);
+		model.update(block, 0, n);
+		decoder = model.decoder();
+
+		return n;
+	}
+
+	/**
+	 * Decodes a block of interleaved streams
+	 * @param inFile is the encoded file
+	 * @param index is the index of its blocks
+	 * @param i is the number of the block
+	 * @param block is the array in which symbols are stored
+	 * @return the number of symbols
+	 */
+	private int decodeInterleaved(InputFile inFile, BlockIndex index, int i, byte[] block) {
+		int n = (int) index.symbols(i);				// (blocks are small)
+
+		encoded = InterleavedCoder.read(inFile, index.start() + index.offset(i) / 8, encoded);
+		InterleavedCoder.decode(decoder, encoded, 0, block, 0, n);
+
+		return n;
+	}
+
+	/**
+	 * Decodes a typed block (see TypedBlocks)
+	 * @param inFile is the encoded file
+	 * @param index is the index of its blocks
+	 * @param i is the number of the block
+	 * @param block is the array in which symbols are stored
+	 * @return the number of symbols
+	 */
+	private int decodeTyped(InputFile inFile, BlockIndex index, int i, byte[] block) {
+		int n = (int) index.symbols(i);				// (blocks are small)
+
+		encoded = TypedBlocks.decode(inFile, index.start() + index.offset(i) / 8, decoder,
+									 (fileFlags & Interleaved) != 0, block, n, encoded);
+
+		return n;
+	}
+
+	/**
+	 * Encodes a message as blocks of interleaved streams, typed blocks, or both (every block
+	 * has BlockSize symbols but the last one, whatever the regions of the message)
+	 * @param regions are the buffers with the message, one after the other (not consumed)
+	 * @param bits is the output stream of bits (at a byte boundary)
+	 * @param block is a scratch array of BlockSize bytes
+	 * @param freq is the histogram with the symbols encoded, which is updated (null if none)
+	 * @param flags are the flags of the format (Interleaved, Typed or both)
+	 * @throws IOException
+	 */
+	private void encodeBlocks(ByteBuffer[] regions, BitWriter bits, byte[] block, Histogram freq, int flags) throws IOException {
+		byte[] encoded = new byte[TypedBlocks.maxEncodedSize(tableEncoding, block.length)];
+		Histogram counts = ((flags & Typed) == 0) ? null : new Histogram(256);	// of each block
+		boolean interleaved = (flags & Interleaved) != 0;
+		int n = 0;
+
+		if (counts != null) {
+			blockTypes = new long[TypedBlocks.Types];
+			typedBytes = 0;
 		}
-		buffer = buffer.substring(1);
-		
-		return nextTree;
+
+		for (ByteBuffer region : regions) {
+			ByteBuffer in = region.duplicate();
+			while (in.hasRemaining()) {
+				int m = Math.min(block.length - n, in.remaining());
+				in.get(block, n, m);
+				n += m;
+				if (n == block.length) {
+					encodeBlock(block, n, interleaved, encoded, counts, bits, freq);
+					n = 0;
+				}
+			}
+		}
+		if (n > 0)
+			encodeBlock(block, n, interleaved, encoded, counts, bits, freq);
+	}
+
+	/**
+	 * Encodes a block of interleaved streams, a typed block, or both
+	 * @param block is an array with the symbols
+	 * @param n is the number of symbols
+	 * @param interleaved is whether the block is (or typed blocks are) interleaved streams
+	 * @param encoded is a scratch array for the encoded block
+	 * @param counts is a scratch histogram for typed blocks (null if not typed)
+	 * @param bits is the output stream of bits (at a byte boundary)
+	 * @param freq is the histogram with the symbols encoded, which is updated (null if none)
+	 * @throws IOException
+	 */
+	private void encodeBlock(byte[] block, int n, boolean interleaved, byte[] encoded, Histogram counts,
+							 BitWriter bits, Histogram freq) throws IOException {
+		long t = clock();
+		long p = bits.position();
+
+		if (freq != null)
+			freq.add(block, 0, n);
+		if (counts != null) {						// the type follows from a sample of the block
+			int type = TypedBlocks.type(block, n, counts, tableEncoding);
+			type = TypedBlocks.write(bits, type, tableEncoding, block, n, interleaved, encoded);
+			blockTypes[type]++;
+			typedBytes += (bits.position() - p) / 8;
+		}
+		else
+			bits.writeBytes(encoded, 0, InterleavedCoder.encode(tableEncoding, block, 0, n, encoded));
+		block(Phase.Encode, n, bits.position() - p, t);
 	}
 
+	/**
+	 * Encodes a message with an adaptive code, in a single pass
+	 * @param regions are the buffers with the message, one after the other (not consumed)
+	 * @param out is the output channel
+	 * @param block is a scratch array of bytes
+	 * @throws IOException
+	 */
+	private void encodeAdaptive(ByteBuffer[] regions, WritableByteChannel out, byte[] block) throws IOException {
+		HuffmanOutputStream stream = HuffmanOutputStream.adaptive(Channels.newOutputStream(out));
+
+		for (ByteBuffer region : regions) {
+			ByteBuffer in = region.duplicate();
+			while (in.hasRemaining()) {
+				int n = Math.min(block.length, in.remaining());
+				in.get(block, 0, n);
+				stream.write(block, 0, n);
+			}
+		}
+		stream.finish();
+		headerBytes = -1;
+		tableEncoding = null;						// the code changed along the message
+		tree = null;
+		frequencies = null;
+		decoder = null;
+		context = null;
+	}
 
 	/**
-	 * Reads the header of the file and returns the frequencies of each char
-	 * @param inFile is the input stream
-	 * @return a map with the symbols and their frequencies
+	 * Encodes a message with an order-1 context model, in two passes
+	 * @param regions are the buffers with the message, one after the other (not consumed)
+	 * @param out is the output channel
+	 * @param block is a scratch array of bytes
+	 * @throws IOException
+	 */
+	private void encodeContext(ByteBuffer[] regions, WritableByteChannel out, byte[] block) throws IOException {
+		long[] counts = new long[ContextModel.Contexts << 8];
+		BitWriter bits;
+		int c = 0;									// the context of the next byte
+
+		long t = clock(), p;						// (the start of each phase)
+
+		for (ByteBuffer region : regions)			// first pass: counts of each context
+			c = ContextModel.count(region.duplicate(), counts, c, block);
+		t = lap(Phase.Count, t);
+		context = new ContextModel(counts, maxCodeLength);
+		t = lap(Phase.Generate, t);
+		tableEncoding = null;						// there is no single code
+		tree = null;
+		frequencies = null;
+		decoder = null;
+
+		bits = new BitWriter(out);					// second pass: encodes each byte with the
+		writeHeader(bits, Context, context.total());	// code of its context
+		t = lap(Phase.Header, t);
+		p = bits.position();
+		c = 0;
+		for (ByteBuffer region : regions)
+			c = context.encode(region.duplicate(), bits, c, block);
+		block(Phase.Encode, context.total(), bits.position() - p, t);	// a single block
+		bits.flush();
+		lap(Phase.Encode, t);
+		written(p / 8, 0, bits.position() / 8);
+	}
+
+	/**
+	 * Decodes a message encoded with an order-1 context model, a block at a time
+	 * @param in is the input stream of bits
+	 * @param total is the number of bytes to decode
+	 * @param block is a scratch array of bytes
+	 * @param sink receives the bytes of each block
+	 * @throws IOException
+	 */
+	private void decodeContext(BitReader in, long total, byte[] block, Alphabet.ByteSink sink) throws IOException {
+		int c = 0;									// the context of the next byte
+
+		for (long i = 0; i < total; i += block.length) {
+			int n = (int) Math.min(block.length, total - i);
+			c = context.decode(in, block, 0, n, c);
+			checkEnd(in);
+			sink.accept(block, n);
+		}
+	}
+
+	/**
+	 * Prints some statistics about the context model: its codes and, if the message was
+	 * encoded by this object, the conditional entropy and the length of its encoding
+	 * @param f is the format of decimal numbers
+	 */
+	private void printContextStats(DecimalFormat f) {
+		long total = context.total();
+		long header = BytesPerInt + 2 + context.size();
+		long bits = context.bits();
+
+		System.out.println("Context model:           order 1, " + context.tables() + " codes (" +
+						   (context.tables() - 1) + " contexts with a code of their own)");
+		if (!context.counted()) {
+			System.out.println("Header size:             " + header + " bytes");
+			return;
+		}
+		System.out.println("Number of symbols:       " + total);
+		System.out.println("Conditional entropy:     " + f.format(context.entropy()) + " bits");
+		System.out.println("Avg. encoding lenght:    " + f.format(total > 0 ? (double) bits / total : 0) + " bits");
+		System.out.println("Message encoding lenght: " + bits + " bits");
+		System.out.println("Encoded file size:       " + (header + (bits + 7) / 8) + " bytes (" + header + " [header] + " + (bits + 7) / 8 + " [message])");
+		System.out.println("Net space saving:        " + f.format(100 - 100 * (double) (header + (bits + 7) / 8) / (double) total) + "%");
+	}
+
+	/**
+	 * Builds the index of blocks of a streamed file from the headers of its frames
+	 * @param inFile is the encoded file
+	 * @param start is the position (in bytes) of the first frame
+	 * @return the index
+	 * @throws IOException if a frame is larger than the maximum
+	 */
+	private BlockIndex readFrames(InputFile inFile, long start) throws IOException {
+		BlockIndex index = new BlockIndex(start);
+		long p = start;
+		int symbols, bytes;
+
+		do {
+			ByteBuffer frame = inFile.read(p, HuffmanOutputStream.FrameSize);
+			symbols = readInt(frame, BytesPerInt);
+			bytes = readInt(frame, BytesPerInt);
+			p += HuffmanOutputStream.FrameSize;
+			if (symbols < 0 || symbols > HuffmanOutputStream.BlockSize || bytes < 0)
+				throw new IOException("Frame of " + symbols + " symbols with " + bytes + " bytes");
+			if (symbols > 0)
+				index.add(8 * (p - start), symbols);	// the encoding follows the header of the frame
+			p += bytes;
+		} while (symbols > 0);
+
+		return index;
+	}
+
+	/**
+	 * Builds the index of blocks of a file of interleaved streams from their sizes
+	 * @param inFile is the encoded file
+	 * @param start is the position (in bytes) of the first block
+	 * @param total is the number of symbols of the message
+	 * @return the index
+	 * @throws IOException if the file is truncated
+	 */
+	private BlockIndex readInterleaved(InputFile inFile, long start, long total) throws IOException {
+		BlockIndex index = new BlockIndex(start);
+		long p = start;
+
+		for (long first = 0; first < total; first += BlockSize) {
+			index.add(8 * (p - start), Math.min(BlockSize, total - first));
+			p += InterleavedCoder.size(inFile, p);
+			if (p > inFile.size())
+				throw new IOException("The encoded file is truncated");
+		}
+
+		return index;
+	}
+
+	/**
+	 * Builds the index of typed blocks of a file from their types and sizes (and counts
+	 * the blocks of each type)
+	 * @param inFile is the encoded file
+	 * @param start is the position (in bytes) of the first block
+	 * @param total is the number of symbols of the message
+	 * @return the index
+	 * @throws IOException if the file is truncated
+	 */
+	private BlockIndex readTyped(InputFile inFile, long start, long total) throws IOException {
+		BlockIndex index = new BlockIndex(start);
+		boolean interleaved = (fileFlags & Interleaved) != 0;
+		long p = start;
+
+		blockTypes = new long[TypedBlocks.Types];
+		for (long first = 0; first < total; first += BlockSize) {
+			int n = (int) Math.min(BlockSize, total - first);
+			index.add(8 * (p - start), n);
+			blockTypes[TypedBlocks.type(inFile, p)]++;
+			p += TypedBlocks.size(inFile, p, n, interleaved);
+			if (p > inFile.size())
+				throw new IOException("The encoded file is truncated");
+		}
+		typedBytes = p - start;
+
+		return index;
+	}
+
+	/**
+	 * Returns a pre-trained code given its fingerprint: either the code set to encode files
+	 * or one in the cache
+	 * @param fingerprint is the fingerprint of the code
+	 * @return the code
+	 * @throws IOException if the code is unknown
+	 */
+	private TrainedTable findTrained(long fingerprint) throws IOException {
+		if (trained != null && trained.fingerprint() == fingerprint)
+			return trained;
+		if (cache == null)
+			throw new IOException("File encoded with an unknown pre-trained code: " + String.format("%016x", fingerprint));
+		return cache.get(fingerprint);
+	}
+
+	/**
+	 * Uses the pre-trained code to encode files
+	 */
+	private void useTrained() {
+		tableEncoding = trained.table();
+		tree = null;
+		frequencies = null;
+		decoder = trained.decoder();
+		context = null;
+		headerBytes = -1;
+	}
+
+	/**
+	 * Returns the current code, used to encode and decode messages in memory: the pre-trained
+	 * one, if set, or else the one of the last file encoded or decoded
+	 * @throws RuntimeException if there is none
+	 */
+	private CodeTable code() {
+		if (trained != null && tableEncoding != trained.table())
+			useTrained();
+		if (tableEncoding == null)
+			throw new RuntimeException("No code to encode messages: set a pre-trained one, or encode or decode a file first");
+		return tableEncoding;
+	}
+
+	/**
+	 * Records the sizes of the file just encoded or decoded, for the statistics
+	 * @param header is the size in bytes of its header
+	 * @param footer is the size in bytes of its footer (0 if none)
+	 * @param file is the size in bytes of the whole file
+	 */
+	private void written(long header, long footer, long file) {
+		headerBytes = header;
+		footerBytes = footer;
+		fileBytes = file;
+	}
+
+	/**
+	 * Returns the current time, to measure phases and blocks (0 without a listener, as they
+	 * are not measured)
+	 */
+	private long clock() {
+		return (listener != null) ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Reports to the listener, if any, that a phase has finished
+	 * @param phase is the phase
+	 * @param start is the time at which it started (see clock)
+	 * @return the current time (the start of the next phase)
+	 */
+	private long lap(Phase phase, long start) {
+		long now;
+
+		if (listener == null)
+			return 0;
+		now = System.nanoTime();
+		listener.phase(phase, now - start);
+		return now;
+	}
+
+	/**
+	 * Reports to the listener, if any, that a block has been encoded or decoded
+	 * @param phase is either Encode or Decode
+	 * @param bytes is the number of bytes of the original block
+	 * @param bits is the number of bits of the encoded block (0 if unknown)
+	 * @param start is the time at which it started (see clock)
+	 */
+	private void block(Phase phase, long bytes, long bits, long start) {
+		if (listener != null)
+			listener.block(phase, bytes, bits, System.nanoTime() - start);
+	}
+
+	/**
+	 * Reports to the listener, if any, that a file has been encoded or decoded
+	 * @param phase is either Encode or Decode
+	 * @param bytesIn is the number of bytes read
+	 * @param bytesOut is the number of bytes written
+	 * @param start is the time at which it started (see clock)
+	 */
+	private void done(Phase phase, long bytesIn, long bytesOut, long start) {
+		if (listener != null)
+			listener.file(phase, bytesIn, bytesOut, System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns the flags of the format in which files are encoded
+	 * @param indexed is whether the message is followed by an index of blocks
+	 */
+	private int flags(boolean indexed) {
+		int layout = indexed ? Indexed : (interleaved ? Interleaved : 0) | (rawBlocks ? Typed : 0);
+
+		if (trained != null)
+			return layout | Trained;
+		if (alphabet != Alphabet.Bytes)
+			return (indexed ? Indexed : 0) | Canonical | Symbols;
+		return layout | (canonical || maxCodeLength > 0 || sampling > 1 ? Canonical : 0);
+	}
+
+	/**
+	 * Writes the header of a file. Files with some flag are marked and have the version of
+	 * the format and the flags before the information on the encoding
+	 * @param outStream is the output stream in which the header is written
+	 * @param flags are the flags of the format (0 for files with just the frequencies)
+	 * @param total is the number of symbols of the message
 	 * @throws IOException 
 	 */
-	private Map<Character, Integer> readHeader(FileInputStream inFile) throws IOException {
-		Map <Character, Integer> freq = new Hashtable<Character, Integer>();	
+	void writeHeader(BitWriter outStream, int flags, long total) throws IOException {
+		if (flags != 0) {
+			writeInt(outStream, Magic, BytesPerInt);
+			outStream.write(flags > 0xFF ? WideVersion : Version, 8);
+			writeInt(outStream, flags, flags > 0xFF ? 2 : 1);
+		}
+		if ((flags & Symbols) != 0)
+			outStream.write(alphabet.ordinal(), 8);
+		if ((flags & Context) != 0)
+			context.write(outStream);
+		else if ((flags & Trained) != 0) {
+			int k = 0;
+			for (long t = total; t > 0; t >>>= 8)
+				k++;
+			writeLong(outStream, trained.fingerprint(), 8);	// the fingerprint of the code...
+			outStream.write(k, 8);							// ...and the size of the message
+			writeLong(outStream, total, k);
+		}
+		else if ((flags & Canonical) != 0)
+			new CanonicalHeader(tableEncoding, total).write(outStream);
+		else
+			writeHeader(outStream);
+	}
+
+	/**
+	 * Returns the number of bytes of the message
+	 */
+	private long bytes() {
+		return (alphabet == Alphabet.Bytes) ? getMessageSize() : messageBytes;
+	}
+
+	/**
+	 * Opens (creating or truncating it) an output file
+	 */
+	private FileChannel openOutput(String output) throws IOException {
+		return FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Reads the header of the file and returns the frequencies of each char
+	 * @param inFile is the input buffer
+	 * @return a histogram with the symbols and their frequencies
+	 * @throws IOException if the header is corrupt
+	 */
+	Histogram readHeader(ByteBuffer inFile) throws IOException {
+		Histogram freq = new Histogram(256);	
 		int n = readInt(inFile, BytesPerInt);	// number of symbols in the header
 		int b = readInt(inFile, BytesPerInt);	// number of bytes per frequency value
 		char c;							// a symbol
-		int f;							// its frequency
+		long f;							// its frequency
 		
+		if (n < 0 || n > 256 || b < 0 || b > 8)
+			throw new IOException("Corrupt header of " + n + " symbols with " + b + " bytes per frequency");
 		for (int i=0; i<n; i++) {		
-			c = (char) inFile.read();	// gets symbol
-			f = readInt(inFile, b);		// gets frequency
-			freq.put(c, f);				// adds it to the map
+			c = (char) (inFile.get() & 0xFF);	// gets symbol
+			f = readLong(inFile, b);	// gets frequency
+			freq.set(c, f);				// adds it to the histogram
 		}
 		
 		return freq;
@@ -423,12 +1733,12 @@ public class HuffmanCode {
 	 * @param outStream is the output stream in which the header is written
 	 * @throws IOException 
 	 */
-	private void writeHeader(FileOutputStream outStream) throws IOException {
+	private void writeHeader(BitWriter outStream) throws IOException {
 		writeInt(outStream, tableEncoding.size(), BytesPerInt); 	// writes the number of symbols
-		int b = bytesRequired(tree); 
+		int b = bytesRequired(tree()); 
 		writeInt(outStream, b, BytesPerInt); 						// writes the number of bytes
 																	// required per each frequency
-		writeTree(outStream, tree, b); 								// writes the symbols and their frequencies
+		writeTree(outStream, tree(), b); 								// writes the symbols and their frequencies
 	}
 	
 	/**
@@ -437,18 +1747,20 @@ public class HuffmanCode {
 	 * @return the number of bytes required to store frequency values
 	 */
 	private int bytesRequired(HuffmanTree T) {
-		int i, max = maxFrequency(T);
+		int i;
+		long max = maxFrequency(T);
 		
 		for (i=0; max>0; i++, max/= 256);
 	
 		return i;
 	}
 	
-	private int maxFrequency(HuffmanTree T) {
-		if (T.isLeaf())
-			return T.getFrequency();
-		else
-			return Math.max(maxFrequency(T.left()), maxFrequency(T.right()));
+	private long maxFrequency(HuffmanTree T) {
+		long max = 0;
+		
+		for (int i = 0; i < T.leaves(); i++)
+			max = Math.max(max, T.frequency(i));
+		return max;
 	}
 
 	
@@ -458,14 +1770,11 @@ public class HuffmanCode {
 	 * @param table
 	 * @return
 	 */
-	private int getTotalLength(HuffmanTree T, Map<Character, String> table) {
-		int l;		
-		
-		if (T.isLeaf())
-			l = T.getFrequency()*(table.get(T.getSymbol()).length());
-		else
-			l = getTotalLength(T.left(), table) + getTotalLength(T.right(), table);
+	private long getTotalLength(HuffmanTree T, CodeTable table) {
+		long l = 0;
 		
+		for (int i = 0; i < T.leaves(); i++)
+			l += T.frequency(i)*table.length(T.symbol(i));
 		return l;
 	}
 
@@ -473,23 +1782,18 @@ public class HuffmanCode {
 
 
 	/**
-	 * Writes recursively the tree (only the leaves)
+	 * Writes the leaves of the tree, from left to right
 	 * @param outStream is the output stream in which the info is written
 	 * @param T is the huffman tree
 	 * @param b is the number of bytes used to store each frequency value
 	 * @throws IOException 
 	 */
 
-	private void writeTree(FileOutputStream outStream, HuffmanTree T, int b) throws IOException {
-		if (T.isLeaf()) {
-			outStream.write(T.getSymbol());				// writes symbol
-			writeInt(outStream, T.getFrequency(), b);	// writes its frequency
-		}
-		else {
-			writeTree(outStream, T.left(), b);
-			writeTree(outStream, T.right(), b);
+	private void writeTree(BitWriter outStream, HuffmanTree T, int b) throws IOException {
+		for (int leaf : T.leavesInOrder()) {
+			outStream.write(T.symbol(leaf) & 0xFF, 8);	// writes symbol
+			writeLong(outStream, T.frequency(leaf), b);	// writes its frequency
 		}
-		
 	}
 
 	/**
@@ -499,105 +1803,54 @@ public class HuffmanCode {
 	 * @param b 
 	 * @throws IOException 
 	 */
-	private void writeInt(FileOutputStream outStream, int v, int b) throws IOException {
+	private void writeInt(BitWriter outStream, int v, int b) throws IOException {
 		for (int i=0; i<b; i++, v/=256) {
-			outStream.write((char)(v%256));
+			outStream.write(v%256, 8);
+		}
+	}
+	
+	/**
+	 * Writes a long as b bytes (from LSB to MSB)
+	 * @param outStream is the output stream
+	 * @param v is the long to be written
+	 * @param b is the number of bytes
+	 * @throws IOException 
+	 */
+	private void writeLong(BitWriter outStream, long v, int b) throws IOException {
+		for (int i=0; i<b; i++, v>>>=8) {
+			outStream.write(v & 0xFF, 8);
 		}
 	}
 	
 	/**
 	 * Reads an int as b bytes (from LSB to MSB)
-	 * @param inFile is the input stream
+	 * @param inFile is the input buffer
 	 * @param b is the number of bytes
 	 * @return the int read
-	 * @throws IOException 
 	 */
-	private int readInt(FileInputStream inFile, int b) throws IOException {
+	private int readInt(ByteBuffer inFile, int b) {
 		int c, v, w;	// c is the byte read, w is its weight, and v is the int
 		
 		v = 0; w = 1;
 		for (int i=0; i<b; i++, w*=256) {
-			c = inFile.read();
+			c = inFile.get() & 0xFF;
 			v += w*c;
 		}
 		return v;
 	}
-
-	/**
-	 * Writes whatever bits may remain in the buffer
-	 * @param outStream is the output stream
-	 * @throws IOException 
-	 */
-	private void flushBuffer(FileOutputStream outStream) throws IOException {
-		if (buffer.length()>0) {
-			char c = binaryToChar (buffer);
-			outStream.write(c);
-		}
-	}
-
-	/**
-	 * Clears the buffer
-	 */
-	private void clearBuffer() {
-		buffer = "";
-	}
-
-	/**
-	 * Writes an array of bits to the file. 
-	 * Uses a buffer to write bits in blocks of 8 (i.e., bytes).
-	 * @param outStream is the output stream
-	 * @param string is the array of bits (represented as a string of "0"s and "1"s)
-	 * @throws IOException
-	 */
-	private void writeBits(FileOutputStream outStream, String string) throws IOException {
-		buffer = buffer + string;
-		int n = buffer.length();
-
-		while (n>8) {
-			char c = binaryToChar (buffer.substring(0, 8));
-			outStream.write(c);
-			buffer = buffer.substring(8, n);
-			n -= 8;
-		}
-	}
-
-	/**
-	 * Converts a string of "0"s and "1"s to its decimal value
-	 * @param substring is a string of length <= 8 containing just 0s and 1s
-	 * @return a char with the corresponding ascii code
-	 */
-	private char binaryToChar(String substring) {
-		int b = 0;
-		int n = substring.length();
-		assert n <= 8 : "parameter of binaryToChar cannot be longer than 8 bits";
-		
-		for (int i=0; i<n; i++)
-			if (substring.charAt(i) == '1')
-				b = b + (1 << (8-i-1));
-		
-		return (char)b;
-	}
 	
 	/**
-	 * Returns a string of 0s and 1s corresponding to the byte read.
-	 * @param c is an int between 0 and 255
-	 * @return the binary representation of c
+	 * Reads a long as b bytes (from LSB to MSB)
+	 * @param inFile is the input buffer
+	 * @param b is the number of bytes
+	 * @return the long read
 	 */
-	@SuppressWarnings("unused")
-	private String byteToBinary(int c) {
-		assert (c>=0) && (c<=255) : "parameter of intToBinary must be in [0..255]";
-		String b = "";
-		
-		for (int i=0; i<8; i++) {
-			if (c%2 == 0)
-				b = "0" + b;
-			else
-				b = "1" + b;
-			c = c/2;
-		}
+	private long readLong(ByteBuffer inFile, int b) {
+		long v = 0;
 		
-		return b;
-
+		for (int i=0; i<b; i++)
+			v |= (long) (inFile.get() & 0xFF) << (8*i);
+		return v;
 	}
 
 
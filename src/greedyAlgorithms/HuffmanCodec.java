@@ -0,0 +1,172 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable codec for messages in memory: a code along with its decoding tables, built once
+ * and shared by any number of threads without locking. The state of each call lives in local
+ * variables, except for the reader of bits used to decode, which is kept per thread so that
+ * nothing is allocated per call.
+ *
+ * An encoded message has its number of symbols (4 bytes, from LSB to MSB) followed by their
+ * encodings (most significant bit of each byte first, the last byte padded with "0"s).
+ *
+ * @author guisanpea
+ *
+ */
+public final class HuffmanCodec {
+	private static final ByteBuffer Empty = ByteBuffer.allocate(0);
+	private static final ThreadLocal<BitReader> Readers =		// reader of bits of each thread
+			ThreadLocal.withInitial(() -> new BitReader(Empty));
+
+	private final CodeTable table;			// encoding (code bits, length) of each symbol
+	private final DecodeTable decoder;		// its decoding tables
+
+	/**
+	 * Creates a codec
+	 * @param table is the code
+	 */
+	public HuffmanCodec(CodeTable table) {
+		this(table, new DecodeTable(table));
+	}
+
+	/**
+	 * Creates a codec with a pre-trained code
+	 * @param trained is the code
+	 */
+	public HuffmanCodec(TrainedTable trained) {
+		this(trained.table(), trained.decoder());
+	}
+
+	/**
+	 * Creates a codec whose decoding tables are already built
+	 * @param table is the code
+	 * @param decoder are its decoding tables
+	 */
+	HuffmanCodec(CodeTable table, DecodeTable decoder) {
+		this.table = table;
+		this.decoder = decoder;
+	}
+
+	/**
+	 * Returns the code
+	 */
+	public CodeTable table() {
+		return table;
+	}
+
+	/**
+	 * Returns the decoding tables
+	 */
+	DecodeTable decoder() {
+		return decoder;
+	}
+
+	/**
+	 * Encodes a message
+	 * @param src is an array with the message
+	 * @param off is the position of the first byte of the message
+	 * @param len is the number of bytes of the message
+	 * @param dst is the array in which the encoded message is written (see maxEncodedSize)
+	 * @param dstOff is the position of the first byte written
+	 * @return the number of bytes written
+	 * @throws IndexOutOfBoundsException if dst is too small
+	 * @throws RuntimeException if some byte has no encoding
+	 */
+	public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		int alphabet = table.alphabetSize();
+		long bits = 0;					// pending bits, right-aligned
+		int n = 0;						// number of pending bits
+		int p = dstOff;
+
+		for (int i = 0; i < HuffmanCode.BytesPerInt; i++)
+			dst[p++] = (byte) (len >>> (8 * i));
+		for (int i = off; i < off + len; i++) {
+			int b = src[i] & 0xFF;
+			int l = (b < alphabet) ? table.length(b) : -1;
+			if (l < 0)
+				throw new RuntimeException("Byte " + b + " has no encoding in the code");
+			bits = bits << l | table.code(b);
+			for (n += l; n >= 8; n -= 8)
+				dst[p++] = (byte) (bits >>> (n - 8));
+		}
+		if (n > 0)
+			dst[p++] = (byte) (bits << (8 - n));
+
+		return p - dstOff;
+	}
+
+	/**
+	 * Encodes a message
+	 * @param src is the message, from its position to its limit (consumed)
+	 * @param dst is the buffer in which the encoded message is written (heap or direct)
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException if dst is too small
+	 * @throws RuntimeException if some byte has no encoding
+	 */
+	public int encode(ByteBuffer src, ByteBuffer dst) {
+		int alphabet = table.alphabetSize();
+		int len = src.remaining();
+		int start = dst.position();
+		long bits = 0;
+		int n = 0;
+
+		for (int i = 0; i < HuffmanCode.BytesPerInt; i++)
+			dst.put((byte) (len >>> (8 * i)));
+		while (src.hasRemaining()) {
+			int b = src.get() & 0xFF;
+			int l = (b < alphabet) ? table.length(b) : -1;
+			if (l < 0)
+				throw new RuntimeException("Byte " + b + " has no encoding in the code");
+			bits = bits << l | table.code(b);
+			for (n += l; n >= 8; n -= 8)
+				dst.put((byte) (bits >>> (n - 8)));
+		}
+		if (n > 0)
+			dst.put((byte) (bits << (8 - n)));
+
+		return dst.position() - start;
+	}
+
+	/**
+	 * Decodes a message
+	 * @param src is the encoded message, from its position (which is left right after it)
+	 * @param dst is the buffer in which the message is written (heap or direct)
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException if dst is too small
+	 */
+	public int decode(ByteBuffer src, ByteBuffer dst) {
+		BitReader reader = Readers.get();
+		int len = 0;
+
+		for (int i = 0; i < HuffmanCode.BytesPerInt; i++)
+			len |= (src.get() & 0xFF) << (8 * i);
+		if (len > dst.remaining())
+			throw new BufferOverflowException();
+		reader.reset(src);
+		for (int i = 0; i < len; i++)
+			dst.put((byte) decoder.decode(reader));
+		reader.align();							// src is left after the encoded message
+		reader.reset(Empty);					// does not keep src reachable
+
+		return len;
+	}
+
+	/**
+	 * Returns the maximum size of an encoded message
+	 * @param len is the number of bytes of the message
+	 * @return the maximum number of bytes of the encoded message
+	 * @throws RuntimeException if it does not fit in an array
+	 */
+	public int maxEncodedSize(int len) throws RuntimeException {
+		long size = HuffmanCode.BytesPerInt + ((long) len * table.maxLength() + 7) / 8;
+
+		if (size > Integer.MAX_VALUE)
+			throw new RuntimeException("A message of " + len + " bytes may take " + size + " bytes encoded");
+		return (int) size;
+	}
+}
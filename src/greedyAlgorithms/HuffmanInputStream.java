@@ -0,0 +1,166 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Input stream that decodes a stream written by HuffmanOutputStream (with a given, sampled
+ * or adaptive code), a frame at a time,
+ * using bounded memory and reading the underlying stream sequentially (so it works with
+ * sockets, pipes and other unseekable inputs).
+ *
+ * @author guisanpea
+ *
+ */
+public class HuffmanInputStream extends InputStream {
+	private final InputStream in;			// the underlying stream
+	private DecodeTable decoder;			// decoding tables (null until the header is read)
+	private AdaptiveModel model;			// model of the adaptive code (null if not adaptive)
+	private byte[] encoded;					// encoding of the current frame
+	private final byte[] block;				// decoded symbols of the current frame
+	private int pos, n;						// next symbol to be read and number of symbols
+	private final ByteBuffer frame;			// header of a frame
+	private boolean ended;					// whether the last frame has been read
+
+	/**
+	 * Creates a stream
+	 * @param in is the underlying input stream
+	 */
+	public HuffmanInputStream(InputStream in) {
+		this.in = in;
+		this.decoder = null;
+		this.model = null;
+		this.encoded = new byte[HuffmanOutputStream.BlockSize];
+		this.block = new byte[HuffmanOutputStream.BlockSize];
+		this.pos = this.n = 0;
+		this.frame = ByteBuffer.allocate(HuffmanOutputStream.FrameSize).order(ByteOrder.LITTLE_ENDIAN);
+		this.ended = false;
+	}
+
+	/**
+	 * Reads a byte
+	 * @return the byte (or -1 at the end of the stream)
+	 */
+	@Override
+	public int read() throws IOException {
+		if (pos == n && !nextFrame())
+			return -1;
+		return block[pos++] & 0xFF;
+	}
+
+	/**
+	 * Reads some bytes
+	 * @return the number of bytes read (or -1 at the end of the stream)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (pos == n && !nextFrame())
+			return -1;
+		int m = Math.min(len, n - pos);
+		System.arraycopy(block, pos, b, off, m);
+		pos += m;
+		return m;
+	}
+
+	/**
+	 * Returns the number of decoded bytes that can be read without blocking
+	 */
+	@Override
+	public int available() {
+		return n - pos;
+	}
+
+	/**
+	 * Closes the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Reads and decodes the next frame (reading the header of the stream first if needed)
+	 * @return whether there was a frame with symbols
+	 * @throws IOException
+	 */
+	private boolean nextFrame() throws IOException {
+		if (decoder == null)
+			readHeader();
+		while (!ended) {
+			frame.clear();
+			readFully(frame.array(), 0, HuffmanOutputStream.FrameSize);
+			int symbols = frame.getInt();
+			int bytes = frame.getInt();
+			if (symbols == 0)
+				ended = true;
+			else if (symbols < 0 || symbols > block.length)
+				throw new IOException("Frame of " + symbols + " symbols outside the maximum of " + block.length);
+			else if (bytes < 0 || bytes > ((long) symbols * decoder.maxLength() + 7) / 8)	// longer than
+				throw new IOException("Frame of " + symbols + " symbols with " + bytes + " bytes");	// its codes
+			else {
+				if (bytes > encoded.length)
+					encoded = new byte[bytes];
+				readFully(encoded, 0, bytes);
+				HuffmanCode.decode(decoder, new BitReader(ByteBuffer.wrap(encoded, 0, bytes)), block, 0, symbols);
+				if (model != null) {				// the next frame has another code
+					model.update(block, 0, symbols);
+					decoder = model.decoder();
+				}
+				pos = 0;
+				n = symbols;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the header of the stream and builds the decoding tables
+	 * @throws IOException
+	 */
+	private void readHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HuffmanCode.BytesPerInt + 4).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] lengths;
+
+		readFully(header.array(), 0, header.capacity());
+		if (header.getInt() != HuffmanCode.Magic)
+			throw new IOException("Not a stream of huffman codes");
+		int version = header.get() & 0xFF;
+		int flags = header.get() & 0xFF;
+		if (version != HuffmanCode.Version || (flags != (HuffmanCode.Streamed | HuffmanCode.Canonical) &&
+											   flags != (HuffmanCode.Streamed | HuffmanCode.Adaptive)))
+			throw new IOException("Unsupported stream of huffman codes: version " + version + ", flags " + flags);
+		lengths = new byte[header.getShort() & 0xFFFF];
+		readFully(lengths, 0, lengths.length);
+		if ((flags & HuffmanCode.Adaptive) != 0) {
+			model = new AdaptiveModel();
+			decoder = model.decoder();
+		}
+		else
+			decoder = new DecodeTable(CanonicalHeader.read(new BitReader(ByteBuffer.wrap(lengths))).table());
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int m = in.read(b, off, len);
+			if (m < 0)
+				throw new EOFException("Stream of huffman codes ended unexpectedly");
+			off += m;
+			len -= m;
+		}
+	}
+}
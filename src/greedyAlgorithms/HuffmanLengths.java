@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.Arrays;
+
+/**
+ * Lengths of the encodings of an optimal (unlimited) huffman code, computed without building
+ * a tree: the frequencies are sorted once, and the in-place algorithm of Moffat and Katajainen
+ * merges them with the classic two-queue method (leaves and internal nodes are both taken in
+ * ascending order of frequency), in linear time and within a single array:
+ * - first, the array turns into the parent of each internal node (plus the weight of the root)
+ * - then, into the depth of each internal node
+ * - finally, into the depth of each leaf
+ * Ties are broken by symbol, so the lengths only depend on the frequencies.
+ *
+ * @author guisanpea
+ *
+ */
+public class HuffmanLengths {
+
+	/**
+	 * Computes the length of the encoding of each symbol
+	 * @param frequencies is a histogram with the frequency of each symbol
+	 * @return the length of the encoding of each symbol (-1 if not present)
+	 */
+	public static int[] lengths(Histogram frequencies) {
+		int[] lengths = new int[frequencies.alphabetSize()];
+		int[] leaves = frequencies.sorted();				// by frequency, then by symbol
+		long[] a;											// the working array
+		int n = leaves.length;
+
+		Arrays.fill(lengths, -1);
+		if (n == 1)											// a single symbol needs no bits
+			lengths[leaves[0]] = 0;
+		if (n <= 1)
+			return lengths;
+
+		a = new long[n];
+		for (int i = 0; i < n; i++)
+			a[i] = frequencies.frequency(leaves[i]);
+		depths(a, n);
+		for (int i = 0; i < n; i++)
+			lengths[leaves[i]] = (int) a[i];
+
+		return lengths;
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Replaces frequencies sorted in ascending order by the depths of their leaves
+	 * @param a is the array of frequencies (at least 2)
+	 * @param n is the number of frequencies
+	 */
+	private static void depths(long[] a, int n) {
+		int root = 0;				// next internal node to be merged
+		int leaf = 2;				// next leaf to be merged
+		int next;					// next internal node to be created
+
+		/*
+		 * Merges the two lightest trees n-1 times: internal node i is stored at a[i] (over
+		 * the leaves already merged) and points to its parent once merged
+		 */
+		a[0] += a[1];
+		for (next = 1; next < n - 1; next++) {
+			if (leaf >= n || a[root] < a[leaf]) {
+				a[next] = a[root];
+				a[root++] = next;
+			}
+			else
+				a[next] = a[leaf++];
+			if (leaf >= n || (root < next && a[root] < a[leaf])) {
+				a[next] += a[root];
+				a[root++] = next;
+			}
+			else
+				a[next] += a[leaf++];
+		}
+
+		/*
+		 * Depth of each internal node (the root, at n-2, has depth 0)
+		 */
+		a[n - 2] = 0;
+		for (next = n - 3; next >= 0; next--)
+			a[next] = a[(int) a[next]] + 1;
+
+		/*
+		 * Depth of each leaf: the nodes available at each depth that are not internal
+		 * nodes are leaves, assigned from the most frequent one (at the end) backwards
+		 */
+		int available = 1, used = 0, depth = 0;
+		root = n - 2;
+		next = n - 1;
+		while (available > 0) {
+			while (root >= 0 && a[root] == depth) {
+				used++;
+				root--;
+			}
+			while (available > used) {
+				a[next--] = depth;
+				available--;
+			}
+			available = 2 * used;
+			depth++;
+			used = 0;
+		}
+	}
+}
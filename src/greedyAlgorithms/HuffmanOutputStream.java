@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+/**
+ * Output stream that encodes whatever is written to it with huffman codes, using bounded
+ * memory and a single pass (so it works with sockets, pipes and other unseekable outputs).
+ *
+ * The code is either given (e.g., generated beforehand from similar data) or built from a
+ * sample: the first SampleSize bytes written, where every byte counts once more so that
+ * bytes missing from the sample can still be encoded. Codes are canonical, with at most
+ * MaxCodeLength bits. Alternatively, the code is adaptive (see AdaptiveModel): it changes
+ * after each frame, nothing has to be known beforehand and no code is sent, so every frame
+ * can be written as soon as it is flushed.
+ *
+ * The stream is written in the container format with the Streamed flag: the header (mark,
+ * version, flags), the size of the code lengths (2 bytes) and the code lengths (none if the
+ * code is adaptive, which has the Adaptive flag instead of the Canonical one), followed by
+ * frames of at most BlockSize symbols. Each frame has the number of symbols (4 bytes), the
+ * number of bytes of their encoding (4 bytes) and the encoding itself. A frame without
+ * symbols ends the stream.
+ *
+ * @author guisanpea
+ *
+ */
+public class HuffmanOutputStream extends OutputStream {
+	static final int BlockSize = 1 << 16;	// max. number of symbols per frame
+	static final int SampleSize = 1 << 16;	// number of bytes sampled to build the code
+	static final int MaxCodeLength = 15;	// max. length of the encoding of a sampled code
+	static final int FrameSize = 8;			// bytes of the header of a frame
+
+	private final OutputStream out;			// the underlying stream
+	private CodeTable table;				// the code (null until the sample is taken)
+	private final AdaptiveModel model;		// model of the adaptive code (null if not adaptive)
+	private final byte[] block;				// symbols waiting to be encoded
+	private int n;							// number of symbols in the block
+	private final ByteArrayOutputStream encoded;	// encoding of the block
+	private final BitWriter bits;			// writer of the encoding of the block
+	private final ByteBuffer frame;			// header of a frame
+	private boolean started;				// whether the header has been written
+	private boolean closed;
+
+	/**
+	 * Creates a stream whose code is built from a sample of the first bytes written
+	 * @param out is the underlying output stream
+	 */
+	public HuffmanOutputStream(OutputStream out) {
+		this(out, null);
+	}
+
+	/**
+	 * Creates a stream with a given code
+	 * @param out is the underlying output stream
+	 * @param table is the code (just the lengths of the encodings are used), or null to
+	 * build it from a sample of the first bytes written
+	 */
+	public HuffmanOutputStream(OutputStream out, CodeTable table) {
+		this(out, table, null);
+	}
+
+	/**
+	 * Creates a stream with an adaptive code
+	 * @param out is the underlying output stream
+	 * @return the stream
+	 */
+	public static HuffmanOutputStream adaptive(OutputStream out) {
+		return new HuffmanOutputStream(out, null, new AdaptiveModel());
+	}
+
+	/**
+	 * Creates a stream
+	 * @param out is the underlying output stream
+	 * @param table is the code, or null to build it from a sample or to use an adaptive one
+	 * @param model is the model of the adaptive code (or null)
+	 */
+	private HuffmanOutputStream(OutputStream out, CodeTable table, AdaptiveModel model) {
+		this.out = out;
+		this.table = (table == null) ? null : new CodeTable(table.lengths());
+		this.model = model;
+		this.block = new byte[Math.max(BlockSize, (table == null && model == null) ? SampleSize : 0)];
+		this.n = 0;
+		this.encoded = new ByteArrayOutputStream(BlockSize);
+		this.bits = new BitWriter(Channels.newChannel(encoded));
+		this.frame = ByteBuffer.allocate(FrameSize).order(ByteOrder.LITTLE_ENDIAN);
+		this.started = false;
+		this.closed = false;
+	}
+
+	/**
+	 * Writes a byte
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		if (n == block.length)
+			encodeBlock();
+		block[n++] = (byte) b;
+	}
+
+	/**
+	 * Writes some bytes
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (n == block.length)
+				encodeBlock();
+			int m = Math.min(len, block.length - n);
+			System.arraycopy(b, off, block, n, m);
+			n += m;
+			off += m;
+			len -= m;
+		}
+	}
+
+	/**
+	 * Encodes the bytes written so far (as a shorter frame) and flushes the underlying stream
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (n > 0)
+			encodeBlock();
+		out.flush();
+	}
+
+	/**
+	 * Encodes the bytes written so far and ends the stream, without closing the underlying one
+	 * (nothing else can be written)
+	 */
+	public void finish() throws IOException {
+		if (!closed) {
+			if (n > 0 || !started)
+				encodeBlock();
+			writeFrame(0, 0);						// end of the stream
+			out.flush();
+			closed = true;
+		}
+	}
+
+	/**
+	 * Encodes the bytes written so far, ends the stream and closes the underlying one
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Encodes the symbols in the block as frames (writing the header first if the code is
+	 * not known yet)
+	 * @throws IOException
+	 */
+	private void encodeBlock() throws IOException {
+		if (!started) {
+			if (table == null && model == null)
+				table = sample(block, n);
+			writeHeader();
+			started = true;
+		}
+		for (int first = 0; first < n; first += BlockSize) {
+			int m = Math.min(BlockSize, n - first);
+			if (model != null)
+				table = model.table();
+			for (int i = first; i < first + m; i++)
+				if (!table.contains(block[i] & 0xFF))
+					throw new IOException("Symbol " + (block[i] & 0xFF) + " has no encoding in the code of the stream");
+			bits.write(table, block, first, m);
+			bits.flush();
+			writeFrame(m, encoded.size());
+			encoded.writeTo(out);
+			encoded.reset();
+			if (model != null)
+				model.update(block, first, m);
+		}
+		n = 0;
+	}
+
+	/**
+	 * Writes the header of the stream: mark, version, flags and code lengths (if any)
+	 * @throws IOException
+	 */
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HuffmanCode.BytesPerInt + 4).order(ByteOrder.LITTLE_ENDIAN);
+		CanonicalHeader lengths = (model == null) ? new CanonicalHeader(table, 0) : null;
+
+		header.putInt(HuffmanCode.Magic)
+			  .put((byte) HuffmanCode.Version)
+			  .put((byte) (HuffmanCode.Streamed | (model == null ? HuffmanCode.Canonical : HuffmanCode.Adaptive)))
+			  .putShort((short) (model == null ? lengths.size() : 0));
+		out.write(header.array(), 0, header.position());
+		if (lengths != null) {
+			lengths.write(bits);
+			bits.flush();
+			encoded.writeTo(out);
+			encoded.reset();
+		}
+	}
+
+	/**
+	 * Writes the header of a frame
+	 * @param symbols is the number of symbols of the frame
+	 * @param bytes is the number of bytes of their encoding
+	 * @throws IOException
+	 */
+	private void writeFrame(int symbols, int bytes) throws IOException {
+		frame.clear();
+		frame.putInt(symbols).putInt(bytes);
+		out.write(frame.array(), 0, FrameSize);
+	}
+
+	/**
+	 * Builds a code from a sample, counting every byte once more
+	 * @param sample is an array with the sample
+	 * @param n is the number of bytes of the sample
+	 * @return the code
+	 */
+	private static CodeTable sample(byte[] sample, int n) {
+		Histogram freq = new Histogram(256);
+
+		freq.add(sample, 0, n);
+		for (int c = 0; c < 256; c++)
+			freq.set(c, freq.frequency(c) + 1);
+
+		return new CodeTable(PackageMerge.lengths(freq, MaxCodeLength));
+	}
+}
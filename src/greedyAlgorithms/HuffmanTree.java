@@ -1,72 +1,235 @@
 /**
- * 
+ *
  */
 package greedyAlgorithms;
 
 /**
- * @author ccottap
+ * Huffman tree stored as parallel arrays of ints indexed by node: the n leaves come first
+ * (in ascending order of symbols) and the n-1 internal nodes follow in the order in which
+ * they are created, so the children of a node always come before it and the root is the
+ * last node. Every traversal is thus a loop over the arrays, either upwards (children
+ * before parents) or downwards (parents before children).
+ *
+ * @author ccottap, guisanpea
  *
  */
-public class HuffmanTree extends Tree<HuffmanTuple> implements Comparable<HuffmanTree> {
+public class HuffmanTree {
+	private final int[] left, right;		// children of each internal node (-1 for leaves)
+	private final long[] frequency;			// frequency of each node
+	private final int[] symbol;				// symbol of each leaf
+	private final int leaves;				// number of leaves
+	private final int size;					// number of nodes
+
+	/**
+	 * Builds the huffman tree of some frequencies, merging the two least frequent trees until
+	 * a single one is left. Trees are kept in a binary heap that breaks ties exactly as
+	 * java.util.PriorityQueue does when symbols are added in ascending order, so the tree
+	 * (and hence the header of encoded files) is the same as it has always been.
+	 * @param frequencies is a histogram with the frequency of each symbol
+	 */
+	public HuffmanTree(Histogram frequencies) {
+		int n = frequencies.symbols();
+		int[] heap = new int[n];			// roots of the trees yet to be merged
+		int count = 0;
+
+		leaves = n;
+		size = Math.max(2 * n - 1, 0);
+		left = new int[size];
+		right = new int[size];
+		frequency = new long[size];
+		symbol = new int[n];
+
+		n = 0;
+		for (int c = 0; c < frequencies.alphabetSize(); c++)		// in ascending order of symbols
+			if (frequencies.frequency(c) > 0) {
+				symbol[n] = c;
+				frequency[n] = frequencies.frequency(c);
+				left[n] = right[n] = -1;
+				siftUp(heap, count++, n++);
+			}
+
+		while (count > 1) {
+			int l = poll(heap, count--);
+			int r = poll(heap, count--);
+			left[n] = l;
+			right[n] = r;
+			frequency[n] = frequency[l] + frequency[r];
+			siftUp(heap, count++, n++);
+		}
+	}
+
+	/**
+	 * Returns the number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of leaves (i.e., of symbols)
+	 */
+	public int leaves() {
+		return leaves;
+	}
+
+	/**
+	 * Returns the root node
+	 */
+	public int root() {
+		return size - 1;
+	}
 
 	/**
-	 * Creates a leaf
+	 * Returns whether a node is a leaf
 	 */
-	public HuffmanTree(char symbol, int freq) {
-		super(new HuffmanTuple(symbol, freq));
+	public boolean isLeaf(int node) {
+		return left[node] < 0;
 	}
-	
+
 	/**
-	 * Creates a new tree joining two subtrees
+	 * Returns the left child of an internal node
 	 */
-	public HuffmanTree(HuffmanTree L, HuffmanTree R) {
-		super(new HuffmanTuple(L.getFrequency()+R.getFrequency()), L, R);
+	public int left(int node) {
+		return left[node];
 	}
 
 	/**
-	 * Returns the frequency of the symbol (dummy or not) at the root of the tree
+	 * Returns the right child of an internal node
 	 */
-	public int getFrequency() {
-		return root.getFrequency();
+	public int right(int node) {
+		return right[node];
 	}
-	
+
 	/**
-	 * Returns whether the tree is just a leaf.
+	 * Returns the frequency of a node (the sum of those of its leaves)
 	 */
-	public boolean isLeaf() {
-		return !(root.isInternal());
+	public long frequency(int node) {
+		return frequency[node];
 	}
-	
+
 	/**
-	 * Returns the symbol at the root of the tree. If it is dummy, an exception will propagate.
+	 * Returns the symbol of a leaf
 	 */
-	public char getSymbol() {
-		return root.getSymbol();
+	public int symbol(int leaf) {
+		return symbol[leaf];
 	}
-	
+
 	/**
-	 * Returns the left subtree.
+	 * Returns the frequency of the root of the tree (i.e., the total count of symbols, 0 if
+	 * the tree is empty)
 	 */
-	public HuffmanTree left()
-	{
-		return (HuffmanTree) left;
+	public long getFrequency() {
+		return (size == 0) ? 0 : frequency[root()];
 	}
 
 	/**
-	 * Returns the right subtree.
+	 * Returns the leaves from left to right
 	 */
-	public HuffmanTree right()
-	{
-		return (HuffmanTree) right;
+	public int[] leavesInOrder() {
+		int[] order = new int[leaves];
+		int[] stack = new int[size];
+		int top = 0, n = 0;
+
+		if (size > 0)
+			stack[top++] = root();
+		while (top > 0) {
+			int node = stack[--top];
+			if (isLeaf(node))
+				order[n++] = node;
+			else {
+				stack[top++] = right[node];
+				stack[top++] = left[node];
+			}
+		}
+
+		return order;
 	}
 
 	/**
-	 * To compare and sort trees
+	 * Converts the tree to a string for printout purposes (right subtrees first)
 	 */
-	@Override
-	public int compareTo(HuffmanTree o) {
-		return root.compareTo(o.root);
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+
+		if (size > 0)
+			toString(output, root(), 0, new boolean[size], false);
+
+		return output.toString();
 	}
 
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
 
+	/**
+	 * Auxiliary function for converting to text
+	 * @param branch tells, for each level above, whether a vertical line goes through it
+	 * @param next is whether a vertical line goes through this level
+	 */
+	private void toString(StringBuilder output, int node, int level, boolean[] branch, boolean next) {
+		output.append('\n');
+		for (int i = 0; i < level; i++)
+			output.append(branch[i] ? "  |" : "   ");
+		if (level > 0)
+			output.append("  +");
+		output.append(' ');
+		if (isLeaf(node))
+			output.append("[" + (char) symbol[node] + ", " + frequency[node] + "]");
+		else
+			output.append("[" + frequency[node] + "]");
+		branch[level] = next;
+		if (!isLeaf(node)) {
+			toString(output, right[node], level + 1, branch, true);
+			branch[level] = next;
+			toString(output, left[node], level + 1, branch, false);
+		}
+	}
+
+	/**
+	 * Adds a node to the heap (as java.util.PriorityQueue.siftUp does, comparing frequencies
+	 * without subtracting them, which could overflow)
+	 * @param heap is the heap
+	 * @param k is the number of nodes in the heap
+	 * @param x is the node
+	 */
+	private void siftUp(int[] heap, int k, int x) {
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int e = heap[parent];
+			if (Long.compare(frequency[x], frequency[e]) >= 0)
+				break;
+			heap[k] = e;
+			k = parent;
+		}
+		heap[k] = x;
+	}
+
+	/**
+	 * Removes the least frequent node from the heap (as java.util.PriorityQueue.poll does)
+	 * @param heap is the heap
+	 * @param n is the number of nodes in the heap
+	 * @return the node
+	 */
+	private int poll(int[] heap, int n) {
+		int result = heap[0];
+		int x = heap[--n];
+		int k = 0, half = n >>> 1;
+
+		while (k < half) {
+			int child = 2 * k + 1;
+			int c = heap[child];
+			int r = child + 1;
+			if (r < n && Long.compare(frequency[c], frequency[heap[r]]) > 0)
+				c = heap[child = r];
+			if (Long.compare(frequency[x], frequency[c]) <= 0)
+				break;
+			heap[k] = c;
+			k = child;
+		}
+		heap[k] = x;
+
+		return result;
+	}
 }
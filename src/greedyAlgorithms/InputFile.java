@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An input file loaded once and scanned as bulk buffers.
+ * Small files are read with a single call into a direct buffer; big files are memory-mapped
+ * in regions (a mapping cannot exceed 2GB). Every call to regions() returns fresh views of
+ * the same memory, so several passes can share it without reading the file again.
+ *
+ * @author guisanpea
+ *
+ */
+public class InputFile implements Closeable {
+	static final long MapThreshold = 1 << 20;	// files from this size on are memory-mapped
+	static final long RegionSize = 1 << 30;		// max. number of bytes per mapped region
+
+	private final FileChannel channel;			// the open file
+	private final long size;					// size of the file in bytes
+	private final ByteBuffer[] regions;			// contents of the file
+
+	/**
+	 * Opens and loads (or maps) a file
+	 * @param name is the name of the file
+	 * @throws IOException
+	 */
+	public InputFile(String name) throws IOException {
+		channel = FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+		size = channel.size();
+
+		if (size < MapThreshold) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+			regions = new ByteBuffer[] { buffer };
+		}
+		else {
+			regions = new ByteBuffer[(int) ((size + RegionSize - 1) / RegionSize)];
+			for (int i = 0; i < regions.length; i++) {
+				long start = i * RegionSize;
+				regions[i] = channel.map(MapMode.READ_ONLY, start, Math.min(RegionSize, size - start));
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of the file in bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the contents of the file as consecutive buffers, positioned at their start
+	 */
+	public ByteBuffer[] regions() {
+		ByteBuffer[] views = new ByteBuffer[regions.length];
+
+		for (int i = 0; i < regions.length; i++)
+			views[i] = regions[i].duplicate();
+
+		return views;
+	}
+
+	/**
+	 * Returns the contents of the file from a given position on
+	 * @param offset is the position (in bytes) of the first byte
+	 * @return consecutive buffers, the first one positioned at the offset
+	 */
+	public ByteBuffer[] regions(long offset) {
+		int first = (int) Math.min(offset / RegionSize, regions.length - 1);	// the end of the file
+		ByteBuffer[] views = new ByteBuffer[regions.length - first];		// belongs to the last one
+
+		for (int i = first; i < regions.length; i++)
+			views[i - first] = regions[i].duplicate();
+		views[0].position((int) (offset - first * RegionSize));
+
+		return views;
+	}
+
+	/**
+	 * Copies some bytes of the file (possibly spanning several regions)
+	 * @param offset is the position of the first byte
+	 * @param length is the number of bytes
+	 * @return a buffer with the bytes, ready to be read
+	 */
+	public ByteBuffer read(long offset, int length) {
+		byte[] bytes = new byte[length];
+
+		read(offset, bytes, 0, length);
+
+		return ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Copies some bytes of the file (possibly spanning several regions) into an array
+	 * @param offset is the position of the first byte
+	 * @param dst is the array
+	 * @param off is the position in the array of the first byte copied
+	 * @param length is the number of bytes
+	 */
+	public void read(long offset, byte[] dst, int off, int length) {
+		ByteBuffer[] views = regions(offset);
+
+		for (int i = 0; length > 0; i++) {
+			int n = Math.min(length, views[i].remaining());
+			views[i].get(dst, off, n);
+			off += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Closes the file (mapped regions are released when no longer referenced)
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
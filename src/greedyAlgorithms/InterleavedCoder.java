@@ -0,0 +1,244 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes blocks of symbols as Streams interleaved bitstreams (as Huff0 does): the i-th
+ * symbol of a block goes to stream i % Streams. Decoding a single bitstream is a chain of
+ * dependent steps (where a code starts depends on the length of the one before), but the
+ * streams are independent, so the decoder takes a symbol from each of them per iteration
+ * and the CPU overlaps their lookups.
+ *
+ * An encoded block has the size in bytes of each stream (4 bytes each, from LSB to MSB)
+ * followed by the streams, each one padded with "0"s up to a byte boundary. The number of
+ * symbols of each block is not stored: blocks have BlockSize symbols but the last one.
+ *
+ * @author guisanpea
+ *
+ */
+public class InterleavedCoder {
+	static final int Streams = 4;								// number of bitstreams
+	static final int BlockSize = HuffmanCode.BlockSize;			// symbols per block
+	static final int HeaderSize = Streams * HuffmanCode.BytesPerInt;	// sizes of the streams
+	static final int Padding = 8;								// bytes readable after a block
+	static final int MaxPairLength = 28;						// max. length of codes read two at
+																// a time (a word has 57 bits left)
+	private static final VarHandle Words =						// big-endian words of an array
+			MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * Encodes a block
+	 * @param table is the encoding of each symbol
+	 * @param src is an array with the symbols (bytes)
+	 * @param off is the position of the first symbol
+	 * @param len is the number of symbols
+	 * @param dst is the array in which the block is written, from its first position (see
+	 * maxEncodedSize)
+	 * @return the number of bytes written
+	 */
+	public static int encode(CodeTable table, byte[] src, int off, int len, byte[] dst) {
+		long[] bits = new long[Streams];
+		int p0, p1, p2, p3;										// where each stream goes
+		int i = off, end = off + len;
+
+		/*
+		 * Sizes of the streams, from the length of the encoding of each symbol
+		 */
+		for (int k = 0; k < len; k++)
+			bits[k % Streams] += table.length(src[off + k] & 0xFF);
+		p0 = HeaderSize;
+		p1 = p0 + (int) ((bits[0] + 7) / 8);
+		p2 = p1 + (int) ((bits[1] + 7) / 8);
+		p3 = p2 + (int) ((bits[2] + 7) / 8);
+		ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN)
+				  .putInt(p1 - p0).putInt(p2 - p1).putInt(p3 - p2).putInt((int) ((bits[3] + 7) / 8));
+
+		/*
+		 * The streams, a symbol of each one per iteration
+		 */
+		long b0 = 0, b1 = 0, b2 = 0, b3 = 0;					// pending bits, right-aligned
+		int n0 = 0, n1 = 0, n2 = 0, n3 = 0;						// number of pending bits
+		for (; i + Streams <= end; i += Streams) {
+			int s0 = src[i] & 0xFF, s1 = src[i + 1] & 0xFF, s2 = src[i + 2] & 0xFF, s3 = src[i + 3] & 0xFF;
+			b0 = b0 << table.length(s0) | table.code(s0);
+			b1 = b1 << table.length(s1) | table.code(s1);
+			b2 = b2 << table.length(s2) | table.code(s2);
+			b3 = b3 << table.length(s3) | table.code(s3);
+			for (n0 += table.length(s0); n0 >= 8; n0 -= 8)
+				dst[p0++] = (byte) (b0 >>> (n0 - 8));
+			for (n1 += table.length(s1); n1 >= 8; n1 -= 8)
+				dst[p1++] = (byte) (b1 >>> (n1 - 8));
+			for (n2 += table.length(s2); n2 >= 8; n2 -= 8)
+				dst[p2++] = (byte) (b2 >>> (n2 - 8));
+			for (n3 += table.length(s3); n3 >= 8; n3 -= 8)
+				dst[p3++] = (byte) (b3 >>> (n3 - 8));
+		}
+		if (i < end) {											// the last symbols, in the
+			int s = src[i++] & 0xFF;							// first streams
+			b0 = b0 << table.length(s) | table.code(s);
+			for (n0 += table.length(s); n0 >= 8; n0 -= 8)
+				dst[p0++] = (byte) (b0 >>> (n0 - 8));
+		}
+		if (i < end) {
+			int s = src[i++] & 0xFF;
+			b1 = b1 << table.length(s) | table.code(s);
+			for (n1 += table.length(s); n1 >= 8; n1 -= 8)
+				dst[p1++] = (byte) (b1 >>> (n1 - 8));
+		}
+		if (i < end) {
+			int s = src[i++] & 0xFF;
+			b2 = b2 << table.length(s) | table.code(s);
+			for (n2 += table.length(s); n2 >= 8; n2 -= 8)
+				dst[p2++] = (byte) (b2 >>> (n2 - 8));
+		}
+		if (n0 > 0)												// pads each stream
+			dst[p0++] = (byte) (b0 << (8 - n0));
+		if (n1 > 0)
+			dst[p1++] = (byte) (b1 << (8 - n1));
+		if (n2 > 0)
+			dst[p2++] = (byte) (b2 << (8 - n2));
+		if (n3 > 0)
+			dst[p3++] = (byte) (b3 << (8 - n3));
+
+		return p3;
+	}
+
+	/**
+	 * Returns the maximum size of an encoded block
+	 * @param table is the encoding of each symbol
+	 * @param len is the number of symbols
+	 * @return the maximum number of bytes of the encoded block
+	 * @throws RuntimeException if it does not fit in an array
+	 */
+	public static int maxEncodedSize(CodeTable table, int len) throws RuntimeException {
+		long size = HeaderSize + Streams * (((long) (len / Streams + 1) * table.maxLength() + 7) / 8);
+
+		if (size > Integer.MAX_VALUE)
+			throw new RuntimeException("A block of " + len + " symbols may take " + size + " bytes encoded");
+		return (int) size;
+	}
+
+	/**
+	 * Reads an encoded block from a file into an array, followed by Padding bytes
+	 * @param in is the encoded file
+	 * @param position is the position (in bytes) of the block
+	 * @param buffer is the array in which the block is read, if large enough
+	 * @return the array with the block (either buffer or a larger one)
+	 */
+	public static byte[] read(InputFile in, long position, byte[] buffer) {
+		int size = (int) size(in, position);
+
+		if (buffer.length < size + Padding)
+			buffer = new byte[size + Padding];
+		in.read(position, buffer, 0, size);
+
+		return buffer;
+	}
+
+	/**
+	 * Returns the size (in bytes) of an encoded block in a file
+	 * @param in is the encoded file
+	 * @param position is the position (in bytes) of the block
+	 */
+	public static long size(InputFile in, long position) {
+		ByteBuffer sizes = in.read(position, HeaderSize).order(ByteOrder.LITTLE_ENDIAN);
+		long size = HeaderSize;
+
+		for (int k = 0; k < Streams; k++)
+			size += sizes.getInt() & 0xFFFFFFFFL;
+
+		return size;
+	}
+
+	/**
+	 * Decodes a block, a symbol of each stream per iteration. The position of each stream
+	 * and the number of bits of its current byte already consumed are kept in locals, and
+	 * the next bits of every stream are loaded as a whole word before each lookup, so the
+	 * four chains of lookups do not wait for each other.
+	 * @param decoder is the decoding table
+	 * @param src is an array with the encoded block, followed by at least Padding bytes
+	 * @param off is the position of the block in the array
+	 * @param block is the array in which symbols are stored
+	 * @param blockOff is the position of the first symbol in the array
+	 * @param n is the number of symbols
+	 */
+	public static void decode(DecodeTable decoder, byte[] src, int off, byte[] block, int blockOff, int n) {
+		ByteBuffer sizes = ByteBuffer.wrap(src, off, HeaderSize).order(ByteOrder.LITTLE_ENDIAN);
+		int p0 = off + HeaderSize;								// position of each stream
+		int p1 = p0 + sizes.getInt();
+		int p2 = p1 + sizes.getInt();
+		int p3 = p2 + sizes.getInt();
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0;						// bits of the byte consumed
+		int i = blockOff, end = blockOff + n;
+
+		if (decoder.maxLength() <= MaxPairLength)				// two symbols of each stream
+			for (; i + 2 * Streams <= end; i += 2 * Streams) {	// per word loaded
+				long w0 = (long) Words.get(src, p0) << c0;
+				long w1 = (long) Words.get(src, p1) << c1;
+				long w2 = (long) Words.get(src, p2) << c2;
+				long w3 = (long) Words.get(src, p3) << c3;
+				int e0 = decoder.lookup(w0);
+				int e1 = decoder.lookup(w1);
+				int e2 = decoder.lookup(w2);
+				int e3 = decoder.lookup(w3);
+				int f0 = decoder.lookup(w0 << (e0 & 0xFF));
+				int f1 = decoder.lookup(w1 << (e1 & 0xFF));
+				int f2 = decoder.lookup(w2 << (e2 & 0xFF));
+				int f3 = decoder.lookup(w3 << (e3 & 0xFF));
+				block[i] = (byte) (e0 >>> 8);
+				block[i + 1] = (byte) (e1 >>> 8);
+				block[i + 2] = (byte) (e2 >>> 8);
+				block[i + 3] = (byte) (e3 >>> 8);
+				block[i + 4] = (byte) (f0 >>> 8);
+				block[i + 5] = (byte) (f1 >>> 8);
+				block[i + 6] = (byte) (f2 >>> 8);
+				block[i + 7] = (byte) (f3 >>> 8);
+				c0 += (e0 & 0xFF) + (f0 & 0xFF);
+				c1 += (e1 & 0xFF) + (f1 & 0xFF);
+				c2 += (e2 & 0xFF) + (f2 & 0xFF);
+				c3 += (e3 & 0xFF) + (f3 & 0xFF);
+				p0 += c0 >>> 3;
+				p1 += c1 >>> 3;
+				p2 += c2 >>> 3;
+				p3 += c3 >>> 3;
+				c0 &= 7;
+				c1 &= 7;
+				c2 &= 7;
+				c3 &= 7;
+			}
+		for (; i + Streams <= end; i += Streams) {
+			int e0 = decoder.lookup((long) Words.get(src, p0) << c0);
+			int e1 = decoder.lookup((long) Words.get(src, p1) << c1);
+			int e2 = decoder.lookup((long) Words.get(src, p2) << c2);
+			int e3 = decoder.lookup((long) Words.get(src, p3) << c3);
+			block[i] = (byte) (e0 >>> 8);
+			block[i + 1] = (byte) (e1 >>> 8);
+			block[i + 2] = (byte) (e2 >>> 8);
+			block[i + 3] = (byte) (e3 >>> 8);
+			c0 += e0 & 0xFF;
+			c1 += e1 & 0xFF;
+			c2 += e2 & 0xFF;
+			c3 += e3 & 0xFF;
+			p0 += c0 >>> 3;
+			p1 += c1 >>> 3;
+			p2 += c2 >>> 3;
+			p3 += c3 >>> 3;
+			c0 &= 7;
+			c1 &= 7;
+			c2 &= 7;
+			c3 &= 7;
+		}
+		if (i < end)											// the last symbols, in the
+			block[i++] = (byte) (decoder.lookup((long) Words.get(src, p0) << c0) >>> 8);	// first streams
+		if (i < end)
+			block[i++] = (byte) (decoder.lookup((long) Words.get(src, p1) << c1) >>> 8);
+		if (i < end)
+			block[i++] = (byte) (decoder.lookup((long) Words.get(src, p2) << c2) >>> 8);
+	}
+}
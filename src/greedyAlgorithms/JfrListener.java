@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Listener that commits the metrics as Java Flight Recorder events, so they can be recorded
+ * in production (e.g., java -XX:StartFlightRecording ...) and read with the jfr tool or the
+ * JFR API. Events are only created while a recording has them enabled, so it costs next to
+ * nothing otherwise. It can be shared among threads.
+ *
+ * @author guisanpea
+ *
+ */
+public class JfrListener implements CodecListener {
+
+	@Name("greedyAlgorithms.Phase")
+	@Label("Huffman Phase")
+	@Category("Huffman")
+	@StackTrace(false)
+	static class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+	}
+
+	@Name("greedyAlgorithms.Block")
+	@Label("Huffman Block")
+	@Category("Huffman")
+	@StackTrace(false)
+	static class BlockEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Original Size")
+		@DataAmount(DataAmount.BYTES)
+		long bytes;
+
+		@Label("Encoded Size")
+		@DataAmount(DataAmount.BITS)
+		long bits;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+	}
+
+	@Name("greedyAlgorithms.File")
+	@Label("Huffman File")
+	@Category("Huffman")
+	@StackTrace(false)
+	static class FileEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Bytes Read")
+		@DataAmount(DataAmount.BYTES)
+		long bytesIn;
+
+		@Label("Bytes Written")
+		@DataAmount(DataAmount.BYTES)
+		long bytesOut;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long nanos;
+	}
+
+	private static final PhaseEvent Phases = new PhaseEvent();	// to check whether each kind
+	private static final BlockEvent Blocks = new BlockEvent();	// of event is enabled
+	private static final FileEvent Files = new FileEvent();
+
+	@Override
+	public void phase(Phase phase, long nanos) {
+		if (Phases.isEnabled()) {
+			PhaseEvent e = new PhaseEvent();
+			e.phase = phase.name();
+			e.nanos = nanos;
+			e.commit();
+		}
+	}
+
+	@Override
+	public void block(Phase phase, long bytes, long bits, long nanos) {
+		if (Blocks.isEnabled()) {
+			BlockEvent e = new BlockEvent();
+			e.phase = phase.name();
+			e.bytes = bytes;
+			e.bits = bits;
+			e.nanos = nanos;
+			e.commit();
+		}
+	}
+
+	@Override
+	public void file(Phase phase, long bytesIn, long bytesOut, long nanos) {
+		if (Files.isEnabled()) {
+			FileEvent e = new FileEvent();
+			e.phase = phase.name();
+			e.bytesIn = bytesIn;
+			e.bytesOut = bytesOut;
+			e.nanos = nanos;
+			e.commit();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.util.Arrays;
+
+/**
+ * Optimal length-limited code lengths (package-merge algorithm).
+ * Starting from the deepest level, the list of each level merges the symbols (sorted by
+ * frequency) with the packages formed by pairing consecutive items of the level below.
+ * The 2n-2 cheapest items of the top level determine the lengths: every symbol gets one bit
+ * for each level in which it is among the selected items, and each selected package selects
+ * its two items in the level below.
+ *
+ * @author guisanpea
+ *
+ */
+public class PackageMerge {
+
+	/**
+	 * Computes the length of the encoding of each symbol, with no length above a limit,
+	 * minimizing the total length of the message
+	 * @param frequencies is a histogram with the frequency of each symbol
+	 * @param maxLength is the maximum length of an encoding
+	 * @return the length of the encoding of each symbol (-1 if not present)
+	 * @throws RuntimeException if there are too many symbols for the limit
+	 */
+	public static int[] lengths(Histogram frequencies, int maxLength) throws RuntimeException {
+		int[] lengths = new int[frequencies.alphabetSize()];
+		int[] leaves = frequencies.sorted();	// symbols sorted by frequency (then by symbol)
+		int n = leaves.length;
+		long[] freq = new long[n];			// frequency of each of them
+		long[] weights;						// weights of the items of the current level
+		boolean[][] isLeaf;					// whether each item of each level is a symbol
+		int m;
+
+		Arrays.fill(lengths, -1);
+		for (int i = 0; i < n; i++)
+			freq[i] = frequencies.frequency(leaves[i]);
+
+		if (n == 1)							// a single symbol needs no bits
+			lengths[leaves[0]] = 0;
+		if (n <= 1)
+			return lengths;
+		if (maxLength < 64 - Long.numberOfLeadingZeros(n - 1))
+			throw new RuntimeException("Cannot encode " + n + " symbols with at most " + maxLength + " bits");
+
+		/*
+		 * Builds the list of each level, from the deepest one up
+		 */
+		isLeaf = new boolean[maxLength][];
+		weights = new long[0];
+		for (int level = maxLength - 1; level >= 0; level--) {
+			int packages = weights.length / 2;
+			long[] merged = new long[n + packages];
+			boolean[] leaf = new boolean[n + packages];
+			int i = 0, j = 0;
+			for (int k = 0; k < merged.length; k++) {
+				long p = (j < packages) ? weights[2 * j] + weights[2 * j + 1] : Long.MAX_VALUE;
+				if (i < n && freq[i] <= p) {		// symbols first on ties
+					merged[k] = freq[i++];
+					leaf[k] = true;
+				}
+				else {
+					merged[k] = p;
+					j++;
+				}
+			}
+			weights = merged;
+			isLeaf[level] = leaf;
+		}
+
+		/*
+		 * Goes down selecting items: the first symbols of each level get one more bit
+		 */
+		for (int c = 0; c < n; c++)
+			lengths[leaves[c]] = 0;
+		m = 2 * n - 2;
+		for (int level = 0; level < maxLength && m > 0; level++) {
+			int symbols = 0;
+			for (int k = 0; k < m; k++)
+				if (isLeaf[level][k])
+					symbols++;
+			for (int c = 0; c < symbols; c++)
+				lengths[leaves[c]]++;
+			m = 2 * (m - symbols);
+		}
+
+		return lengths;
+	}
+}
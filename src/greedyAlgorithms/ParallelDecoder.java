@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the blocks of an indexed file concurrently in a fork/join pool.
+ * The decoding tables are shared (they are not modified while decoding); every block is
+ * decoded with its own reader into its own buffer and written at its position in the output.
+ *
+ * @author guisanpea
+ *
+ */
+public class ParallelDecoder {
+	private final ForkJoinPool pool;		// the pool in which tasks are run
+	private final InputFile in;				// the encoded file
+	private final BlockIndex index;			// the index of its blocks
+	private final DecodeTable decoder;		// the decoding tables
+	private final boolean interleaved;		// whether blocks are interleaved streams
+	private final CodecListener listener;	// receives the metrics of each block (or null)
+
+	/**
+	 * Creates the decoder
+	 * @param in is the encoded file
+	 * @param index is the index of its blocks
+	 * @param decoder is the decoding table
+	 * @param pool is the pool in which tasks are run
+	 */
+	public ParallelDecoder(InputFile in, BlockIndex index, DecodeTable decoder, ForkJoinPool pool) {
+		this(in, index, decoder, false, pool);
+	}
+
+	/**
+	 * Creates the decoder
+	 * @param in is the encoded file
+	 * @param index is the index of its blocks
+	 * @param decoder is the decoding table
+	 * @param interleaved is whether blocks are interleaved streams (see InterleavedCoder)
+	 * @param pool is the pool in which tasks are run
+	 */
+	public ParallelDecoder(InputFile in, BlockIndex index, DecodeTable decoder, boolean interleaved, ForkJoinPool pool) {
+		this(in, index, decoder, interleaved, null, pool);
+	}
+
+	/**
+	 * Creates the decoder
+	 * @param in is the encoded file
+	 * @param index is the index of its blocks
+	 * @param decoder is the decoding table
+	 * @param interleaved is whether blocks are interleaved streams (see InterleavedCoder)
+	 * @param listener receives the metrics of each block, from the thread that decodes it
+	 * (null if none)
+	 * @param pool is the pool in which tasks are run
+	 */
+	public ParallelDecoder(InputFile in, BlockIndex index, DecodeTable decoder, boolean interleaved,
+						   CodecListener listener, ForkJoinPool pool) {
+		this.pool = pool;
+		this.in = in;
+		this.index = index;
+		this.decoder = decoder;
+		this.interleaved = interleaved;
+		this.listener = listener;
+	}
+
+	/**
+	 * Decodes every block to a file (with positional writes, which can be concurrent)
+	 * @param out is the output file
+	 * @throws IOException
+	 */
+	public void decode(FileChannel out) throws IOException {
+		try {
+			pool.invoke(new Decode(out, 0, index.blocks()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Tasks below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Decodes a range of blocks (halving the range until a single block is left)
+	 */
+	private class Decode extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel out;
+		private final int from, to;
+
+		Decode(FileChannel out, int from, int to) {
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				long symbols = index.symbols(from);	// (more than fit in an array, in a file
+													// without an index)
+				byte[] block = new byte[(int) Math.min(symbols, HuffmanCode.BlockSize)];
+				BitReader bits = interleaved ? null : index.reader(in, from);
+				long position = index.first(from);
+				long start = (listener != null) ? System.nanoTime() : 0;
+				for (long done = 0; done < symbols; ) {
+					int n = (int) Math.min(block.length, symbols - done);
+					ByteBuffer view = ByteBuffer.wrap(block, 0, n);
+					if (interleaved)				// (blocks of interleaved streams are small)
+						InterleavedCoder.decode(decoder, InterleavedCoder.read(in, index.start() + index.offset(from) / 8,
+												new byte[0]), 0, block, 0, n);
+					else
+						HuffmanCode.decode(decoder, bits, block, 0, n);
+					try {
+						if (bits != null)
+							HuffmanCode.checkEnd(bits);
+						while (view.hasRemaining())
+							position += out.write(view, position);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					done += n;
+				}
+				if (listener != null)
+					listener.block(CodecListener.Phase.Decode, symbols, 0, System.nanoTime() - start);
+			}
+			else if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Decode(out, from, mid), new Decode(out, mid, to));
+			}
+		}
+	}
+}
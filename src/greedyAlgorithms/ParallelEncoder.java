@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits an input file into chunks that are counted and encoded concurrently in a fork/join
+ * pool. Each chunk has its own histogram (merged afterwards) and is encoded into its own
+ * bitstream, padded to a whole number of bytes, so that chunks can be stitched together
+ * (and later decoded) independently.
+ *
+ * @author guisanpea
+ *
+ */
+public class ParallelEncoder {
+	static final int ChunkSize = 1 << 22;	// number of symbols per chunk
+	static final int ChunksPerThread = 4;	// chunks encoded per thread before writing them
+
+	private final ForkJoinPool pool;		// the pool in which tasks are run
+	private final List<ByteBuffer> chunks;	// contents of each chunk
+
+	/**
+	 * Splits a file into chunks
+	 * @param in is the input file
+	 * @param pool is the pool in which tasks are run
+	 */
+	public ParallelEncoder(InputFile in, ForkJoinPool pool) {
+		this.pool = pool;
+		this.chunks = new ArrayList<>();
+
+		for (ByteBuffer region : in.regions())
+			for (int p = 0; p < region.limit(); p += ChunkSize)
+				chunks.add(region.slice(p, Math.min(ChunkSize, region.limit() - p)));
+	}
+
+	/**
+	 * Returns the number of chunks
+	 */
+	public int chunks() {
+		return chunks.size();
+	}
+
+	/**
+	 * Returns the number of symbols in a chunk
+	 */
+	public int symbols(int chunk) {
+		return chunks.get(chunk).limit();
+	}
+
+	/**
+	 * Returns the number of chunks that should be encoded at a time to keep every thread busy
+	 */
+	public int batch() {
+		return ChunksPerThread * pool.getParallelism();
+	}
+
+	/**
+	 * Counts the symbols of every chunk concurrently
+	 * @return the merged histogram
+	 */
+	public Histogram count() {
+		return pool.invoke(new Count(0, chunks.size()));
+	}
+
+	/**
+	 * Encodes a range of chunks concurrently
+	 * @param table is the encoding of each symbol
+	 * @param from is the first chunk
+	 * @param to is the position after the last chunk
+	 * @return the encoding of each chunk
+	 */
+	public byte[][] encode(CodeTable table, int from, int to) {
+		byte[][] encoded = new byte[to - from][];
+
+		pool.invoke(new Encode(table, encoded, from, from, to));
+
+		return encoded;
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Tasks below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Builds the histogram of a range of chunks (halving the range until a single chunk is left)
+	 */
+	private class Count extends RecursiveTask<Histogram> {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+
+		Count(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Histogram compute() {
+			Histogram freq;
+
+			if (to - from <= 1) {
+				freq = new Histogram(256);
+				if (from < to)
+					HuffmanCode.count(chunks.get(from).duplicate(), freq, new byte[HuffmanCode.BlockSize]);
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				Count left = new Count(from, mid);
+				left.fork();
+				freq = new Count(mid, to).compute();
+				freq.add(left.join());
+			}
+
+			return freq;
+		}
+	}
+
+	/**
+	 * Encodes a range of chunks (halving the range until a single chunk is left)
+	 */
+	private class Encode extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CodeTable table;
+		private final byte[][] encoded;
+		private final int base, from, to;
+
+		Encode(CodeTable table, byte[][] encoded, int base, int from, int to) {
+			this.table = table;
+			this.encoded = encoded;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				ByteBuffer chunk = chunks.get(from).duplicate();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(chunk.limit() / 2);
+				BitWriter bits = new BitWriter(Channels.newChannel(out));
+				try {
+					HuffmanCode.encode(chunk, table, bits, new byte[HuffmanCode.BlockSize]);
+					bits.flush();
+				} catch (IOException e) {		// cannot happen when writing to memory
+					throw new UncheckedIOException(e);
+				}
+				encoded[from - base] = out.toByteArray();
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Encode(table, encoded, base, from, mid),
+						  new Encode(table, encoded, base, mid, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of trained tables (with their decoding tables already built), keyed by the
+ * fingerprint of the code. When the cache is full, the least recently used table is evicted.
+ * Tables that are not in the cache are obtained from a loader, if any.
+ * It can be shared among threads.
+ *
+ * @author guisanpea
+ *
+ */
+public class TableCache {
+
+	/**
+	 * Obtains a table given its fingerprint
+	 */
+	public interface Loader {
+		/**
+		 * @param fingerprint is the fingerprint of the table
+		 * @return the table, or null if unknown
+		 * @throws IOException
+		 */
+		TrainedTable load(long fingerprint) throws IOException;
+	}
+
+	private final Map<Long, TrainedTable> tables;	// tables, from least to most recently used
+	private final Loader loader;					// loader of missing tables (or null)
+
+	/**
+	 * Creates an empty cache
+	 * @param capacity is the maximum number of tables kept
+	 * @param loader obtains the tables that are not in the cache (or null)
+	 */
+	public TableCache(int capacity, Loader loader) {
+		this.loader = loader;
+		this.tables = new LinkedHashMap<Long, TrainedTable>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, TrainedTable> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Creates a cache that loads the tables saved in a directory, each in a file named after
+	 * its fingerprint (see fileName)
+	 * @param directory is the name of the directory
+	 * @param capacity is the maximum number of tables kept
+	 * @return the cache
+	 */
+	public static TableCache of(String directory, int capacity) {
+		return new TableCache(capacity, fingerprint -> {
+			File file = new File(directory, fileName(fingerprint));
+			return file.exists() ? TrainedTable.load(file.getPath()) : null;
+		});
+	}
+
+	/**
+	 * Returns the name of the file in which a table is saved within a directory
+	 * @param fingerprint is the fingerprint of the table
+	 */
+	public static String fileName(long fingerprint) {
+		return String.format("%016x.huft", fingerprint);
+	}
+
+	/**
+	 * Adds a table to the cache
+	 * @param table is the table
+	 */
+	public synchronized void put(TrainedTable table) {
+		tables.put(table.fingerprint(), table);
+	}
+
+	/**
+	 * Returns a table, loading it if it is not in the cache
+	 * @param fingerprint is the fingerprint of the table
+	 * @return the table
+	 * @throws IOException if the table is unknown
+	 */
+	public synchronized TrainedTable get(long fingerprint) throws IOException {
+		TrainedTable table = tables.get(fingerprint);
+
+		if (table == null && loader != null) {
+			table = loader.load(fingerprint);
+			if (table != null && table.fingerprint() != fingerprint)
+				throw new IOException("Table " + fileName(fingerprint) + " has a different fingerprint");
+			if (table != null)
+				tables.put(fingerprint, table);
+		}
+		if (table == null)
+			throw new IOException("Unknown huffman code table: " + String.format("%016x", fingerprint));
+
+		return table;
+	}
+
+	/**
+	 * Returns the number of tables in the cache
+	 */
+	public synchronized int size() {
+		return tables.size();
+	}
+}
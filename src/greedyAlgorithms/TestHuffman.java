@@ -1,10 +1,33 @@
 package greedyAlgorithms;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import greedyAlgorithms.CodecListener.Phase;
 
 public class TestHuffman {
+    private static String messageFile;     // files of the round trips of Test4()
+    private static String encodedFile;
+    private static String decodedFile;
 
     /**
      * Metodo principal para realizar pruebas
@@ -22,8 +45,14 @@ public class TestHuffman {
             case 2:
                 Test2();
                 break;
+            case 3:
+                Test3((args.length > 1) ? Integer.parseInt(args[1]) : 5);    // 5 GB by default
+                break;
+            case 4:
+                Test4();
+                break;
             default:
-                System.out.println("ERROR: wrong test (" + args[0] + "). Valid test values={1,2}.");
+                System.out.println("ERROR: wrong test (" + args[0] + "). Valid test values={1,2,3,4}.");
         }
     }
 
@@ -86,5 +115,893 @@ public class TestHuffman {
 
     }
 
+    /**
+     * Runs round trips of files in every format, and targeted checks of malformed files,
+     * boundary code lengths and empty inputs, on files in a temporary directory that is
+     * deleted afterwards
+     *
+     * @throws IOException
+     */
+    private static void Test4() throws IOException {
+        Path dir = Files.createTempDirectory("test4");
+
+        messageFile = dir.resolve("message.txt").toString();
+        encodedFile = dir.resolve("encoded.dat").toString();
+        decodedFile = dir.resolve("decoded.txt").toString();
+        try {
+            roundTrips();
+            malformedFiles(Files.readAllBytes(Paths.get("quijote.txt")));
+            boundaryLengths();
+            emptyInputs();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Runs round trips of files in every format, and of edge cases (empty files, a single
+     * symbol)
+     *
+     * @throws IOException
+     */
+    private static void roundTrips() throws IOException {
+        byte[] text = Files.readAllBytes(Paths.get("quijote.txt"));
+        byte[] book = repeat(text, 1 << 20);                            // the text, over many blocks
+        byte[] random = new byte[1 << 20];
+        HuffmanCode h;
+
+        new Random(1).nextBytes(random);
+
+        h = new HuffmanCode();
+        roundTrip("Empty file", h, new HuffmanCode(), new byte[0]);
+        h.printStats();
+        roundTrip("Single symbol", new HuffmanCode(), new HuffmanCode(), new byte[100000]);
+        roundTrip("Single byte", new HuffmanCode(), new HuffmanCode(), new byte[] {'a'});
+
+        h = new HuffmanCode();
+        h.encode("abracadabra");                                        // a code without '#'
+        try {
+            new BitWriter(Channels.newChannel(new ByteArrayOutputStream())).write(h.tableEncoding, "a#".getBytes(), 0, 2);
+            System.out.println("ERROR: Missing symbol is written.");
+        } catch (RuntimeException e) {
+            System.out.println("OK: Missing symbol is rejected (" + e.getMessage() + ").");
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(stream)) {
+            out.write(text, 0, 1000);
+        }
+        byte[] corrupt = stream.toByteArray();
+        ByteBuffer frame = ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN);
+        for (int p = 0; p + 8 <= corrupt.length; p++)                  // the size of the (only) frame
+            if (frame.getInt(p) == 1000 && frame.getInt(p + 4) == corrupt.length - p - 16)
+                frame.putInt(p + 4, Integer.MAX_VALUE);
+        try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(corrupt))) {
+            in.readAllBytes();
+            System.out.println("ERROR: Corrupt frame is read.");
+        } catch (IOException e) {
+            System.out.println("OK: Corrupt frame is rejected (" + e.getMessage() + ").");
+        }
+
+        HuffmanCode plain = new HuffmanCode();
+        roundTrip("Text", plain, new HuffmanCode(), text);
+        roundTrip("Random file", new HuffmanCode(), new HuffmanCode(), random);
+        roundTrip("Long codes", new HuffmanCode(), new HuffmanCode(), fibonacci(30));
+        for (int n : new int[] {7, 8, 9, 63, 64, 65})                  // bits left around a word
+            roundTrip("Random file of " + n + " bytes", new HuffmanCode(), new HuffmanCode(), Arrays.copyOf(random, n));
+        byte[] every = new byte[256];
+        for (int i = 0; i < 256; i++)
+            every[i] = (byte) i;
+        roundTrip("Every byte once", new HuffmanCode(), new HuffmanCode(), every);
+        Histogram counts = new Histogram(256);
+        long[] naive = new long[256];
+        counts.add(random, 3, random.length - 3);                      // unaligned, odd length
+        for (int i = 3; i < random.length; i++)
+            naive[random[i] & 0xFF]++;
+        boolean counted = true;
+        for (int i = 0; i < 256; i++)
+            counted &= (counts.frequency(i) == naive[i]);
+        System.out.println((counted ? "OK: " : "ERROR: ") + "Histogram of random bytes is " + (counted ? "" : "not ") + "exact.");
+        for (int n : new int[] {HuffmanCode.BlockSize - 1, HuffmanCode.BlockSize, 3 * HuffmanCode.BlockSize + 1})
+            roundTrip("Text of " + n + " bytes", new HuffmanCode(), new HuffmanCode(), Arrays.copyOf(book, n));
+
+        roundTrip("Text encoded in parallel", new HuffmanCode(), new HuffmanCode(), book, true);
+        roundTrip("Random file encoded in parallel", new HuffmanCode(), new HuffmanCode(), random, true);
+        roundTrip("Empty file encoded in parallel", new HuffmanCode(), new HuffmanCode(), new byte[0], true);
+
+        Files.write(Paths.get(messageFile), book);
+        h = new HuffmanCode();
+        h.encodeParallel(messageFile, encodedFile);
+        h.decodeParallel(encodedFile, decodedFile);
+        if (compareFiles(messageFile, decodedFile))
+            System.out.println("OK: Text decoded in parallel is identical after decoding.");
+        else
+            System.out.println("ERROR: Text decoded in parallel is not identical after decoding.");
+        checkRanges("text", new HuffmanCode(), book);
+
+        h = new HuffmanCode();
+        h.setCanonical(true);
+        HuffmanCode decoder = new HuffmanCode();
+        roundTrip("Text with canonical codes", h, decoder, text);
+        checkSizes("text decoded with canonical codes", decoder, text.length);
+        if (h.getHeaderSize() < plain.getHeaderSize())
+            System.out.println("OK: Canonical header is smaller (" + h.getHeaderSize() + " < " + plain.getHeaderSize() + " bytes).");
+        else
+            System.out.println("ERROR: Canonical header is not smaller (" + h.getHeaderSize() + " >= " + plain.getHeaderSize() + " bytes).");
+        h = new HuffmanCode();
+        h.setCanonical(true);
+        roundTrip("Random file with canonical codes", h, new HuffmanCode(), random);
+        h = new HuffmanCode();
+        h.setCanonical(true);
+        roundTrip("Single symbol with canonical codes", h, new HuffmanCode(), new byte[1000]);
+
+        for (int limit : new int[] {8, 12, 15}) {
+            h = new HuffmanCode();
+            h.setMaxCodeLength(limit);
+            if (roundTrip("Long codes limited to " + limit + " bits", h, new HuffmanCode(), fibonacci(30))
+                && h.tableEncoding.maxLength() > limit)
+                System.out.println("ERROR: Codes of " + h.tableEncoding.maxLength() + " bits are above the limit.");
+        }
+        h = new HuffmanCode();
+        h.setMaxCodeLength(8);
+        roundTrip("Random file limited to 8 bits", h, new HuffmanCode(), random);
+        h = new HuffmanCode();
+        h.setMaxCodeLength(7);
+        try {
+            roundTrip("Random file limited to 7 bits", h, new HuffmanCode(), random);
+            System.out.println("ERROR: 256 symbols are encoded with 7 bits.");
+        } catch (RuntimeException e) {
+            System.out.println("OK: 256 symbols with 7 bits are rejected (" + e.getMessage() + ").");
+        }
+
+        stream = new ByteArrayOutputStream();
+        streamRoundTrip("Text stream", stream, new HuffmanOutputStream(stream), text);
+        stream = new ByteArrayOutputStream();
+        streamRoundTrip("Random stream", stream, new HuffmanOutputStream(stream), random);
+        stream = new ByteArrayOutputStream();
+        streamRoundTrip("Empty stream", stream, new HuffmanOutputStream(stream), new byte[0]);
+        h = new HuffmanCode();
+        h.encode("abracadabra");
+        stream = new ByteArrayOutputStream();
+        streamRoundTrip("Stream with a given code", stream, new HuffmanOutputStream(stream, h.tableEncoding),
+                        "cabracadabrabracadabra".getBytes());
+        try (HuffmanOutputStream out = new HuffmanOutputStream(new ByteArrayOutputStream(), h.tableEncoding)) {
+            out.write("a#".getBytes());
+            out.flush();
+            System.out.println("ERROR: Missing symbol is written to a stream.");
+        } catch (IOException e) {
+            System.out.println("OK: Missing symbol is rejected by a stream (" + e.getMessage() + ").");
+        }
+
+        TrainedTable trained = TrainedTable.train(text, 0, text.length / 2);
+        stream = new ByteArrayOutputStream();
+        trained.write(stream);
+        TrainedTable saved = TrainedTable.read(new ByteArrayInputStream(stream.toByteArray()));
+        HuffmanCode cached = new HuffmanCode();
+        cached.setTableCache(new TableCache(4, fingerprint -> (fingerprint == saved.fingerprint()) ? saved : null));
+        h = new HuffmanCode();
+        h.setTable(trained);
+        roundTrip("Text with a trained code", h, cached, Arrays.copyOfRange(text, text.length / 2, text.length));
+        checkSizes("text encoded with a trained code", h, text.length - text.length / 2);
+        checkSizes("text decoded with a trained code", cached, text.length - text.length / 2);
+        roundTrip("Random file with a trained code", h, cached, random);
+        try {
+            roundTrip("Text with an unknown code", h, new HuffmanCode(), text);
+            System.out.println("ERROR: Text with an unknown code is decoded.");
+        } catch (IOException e) {
+            System.out.println("OK: Text with an unknown code is rejected (" + e.getMessage() + ").");
+        }
+
+        h = new HuffmanCode();
+        h.encode("quijote.txt", encodedFile);                   // the code of the text
+        memoryRoundTrip("Text in memory", h, book);
+        memoryRoundTrip("Empty message in memory", h, new byte[0]);
+        h = new HuffmanCode();
+        h.setTable(TrainedTable.train(random, 0, random.length));
+        memoryRoundTrip("Random bytes in memory", h, random);
+        if (h.maxEncodedSize(Integer.MAX_VALUE / 8) == 4 + (Integer.MAX_VALUE / 8 * 8L + 7) / 8)    // 8 bits per byte
+            System.out.println("OK: Maximum size of a large message is exact.");
+        else
+            System.out.println("ERROR: Maximum size of a large message is " + h.maxEncodedSize(Integer.MAX_VALUE / 8) + ".");
+        try {
+            System.out.println("ERROR: Maximum size of a huge message is " + h.maxEncodedSize(Integer.MAX_VALUE) + ".");
+        } catch (RuntimeException e) {
+            System.out.println("OK: Maximum size of a huge message is rejected (" + e.getMessage() + ").");
+        }
+
+        HuffmanCodec codec = new HuffmanCodec(TrainedTable.train(text, 0, text.length));
+        boolean shared = IntStream.range(0, 256).parallel().allMatch(i -> {    // threads share the codec
+            byte[] message = Arrays.copyOfRange(book, i * 1000, i * 1000 + i * 17);
+            byte[] encoded = new byte[codec.maxEncodedSize(message.length)];
+            ByteBuffer decoded = ByteBuffer.allocate(message.length);
+            codec.decode(ByteBuffer.wrap(encoded, 0, codec.encode(message, 0, message.length, encoded, 0)), decoded);
+            return Arrays.equals(message, decoded.array());
+        });
+        if (shared)
+            System.out.println("OK: Messages of threads sharing a codec are identical after decoding.");
+        else
+            System.out.println("ERROR: Messages of threads sharing a codec are not identical after decoding.");
+
+        batchRoundTrip(text, random);
+
+        counts = new Histogram(256);
+        counts.add(text, 0, text.length);
+        HuffmanTree tree = new HuffmanTree(counts);
+        boolean flat = (tree.leaves() == counts.symbols()) && (tree.size() == 2 * tree.leaves() - 1)
+                       && (tree.getFrequency() == text.length) && (tree.leavesInOrder().length == tree.leaves());
+        for (int node = 0; node < tree.size(); node++)                 // children come before parents
+            flat &= tree.isLeaf(node) ? counts.frequency(tree.symbol(node)) == tree.frequency(node)
+                                      : tree.left(node) < node && tree.right(node) < node
+                                        && tree.frequency(node) == tree.frequency(tree.left(node)) + tree.frequency(tree.right(node));
+        System.out.println((flat ? "OK: " : "ERROR: ") + "Tree of the text is " + (flat ? "" : "not ") + "consistent.");
+        roundTrip("Two symbols", new HuffmanCode(), new HuffmanCode(), repeat("ab".getBytes(), 1001));
+
+        for (byte[] message : new byte[][] {text, random, fibonacci(30)}) {
+            Histogram scaled = new Histogram(256);
+            counts = new Histogram(256);
+            counts.add(message, 0, message.length);
+            for (int i = 0; i < 256; i++)                              // above 2^47
+                scaled.set(i, counts.frequency(i) << 40);
+            int[] lengths = HuffmanLengths.lengths(counts);
+            int[] optimal = PackageMerge.lengths(counts, 56);
+            long cost = 0, bound = 0;
+            for (int i = 0; i < 256; i++)
+                if (lengths[i] > 0) {
+                    cost += counts.frequency(i) * lengths[i];
+                    bound += counts.frequency(i) * optimal[i];
+                }
+            if (cost == bound && Arrays.equals(lengths, HuffmanLengths.lengths(scaled)))
+                System.out.println("OK: Lengths of " + counts.symbols() + " symbols are optimal (" + cost + " bits).");
+            else
+                System.out.println("ERROR: Lengths of " + counts.symbols() + " symbols are not optimal (" + cost + " > " + bound + " bits).");
+        }
+        h = new HuffmanCode();
+        h.setCanonical(true);
+        roundTrip("Long codes with canonical codes", h, new HuffmanCode(), fibonacci(30));
+
+        h = new HuffmanCode();
+        h.setAdaptive(true);
+        roundTrip("Random file with adaptive codes", h, new HuffmanCode(), random);
+        roundTrip("Empty file with adaptive codes", h, new HuffmanCode(), new byte[0]);
+        checkRanges("an empty file with adaptive codes", new HuffmanCode(), new byte[0]);
+        roundTrip("Text with adaptive codes", h, new HuffmanCode(), book);
+        checkRanges("text with adaptive codes", new HuffmanCode(), book);
+        stream = new ByteArrayOutputStream();
+        streamRoundTrip("Adaptive text stream", stream, HuffmanOutputStream.adaptive(stream), book);
+        stream = new ByteArrayOutputStream();
+        streamRoundTrip("Adaptive random stream", stream, HuffmanOutputStream.adaptive(stream), random);
+
+        String[] names = {"Random file", "Text of 4 blocks and 3 bytes", "Empty file", "Text"};
+        byte[][] messages = {random, Arrays.copyOf(book, 4 * HuffmanCode.BlockSize + 3), new byte[0], book};
+        for (int i = 0; i < messages.length; i++) {                     // the text last, for its ranges
+            h = new HuffmanCode();
+            h.setInterleaved(true);
+            roundTrip(names[i] + " with interleaved streams", h, new HuffmanCode(), messages[i]);
+        }
+        checkRanges("text with interleaved streams", new HuffmanCode(), book);
+        new HuffmanCode().decodeParallel(encodedFile, decodedFile);
+        if (compareFiles(messageFile, decodedFile))
+            System.out.println("OK: Text with interleaved streams decoded in parallel is identical after decoding.");
+        else
+            System.out.println("ERROR: Text with interleaved streams decoded in parallel is not identical after decoding.");
+
+        for (int i = 0; i < messages.length; i++) {
+            h = new HuffmanCode();
+            h.setContextModeled(true);
+            roundTrip(names[i] + " with context models", h, new HuffmanCode(), messages[i]);
+        }
+        checkRanges("text with context models", new HuffmanCode(), book);
+        new HuffmanCode().decodeParallel(encodedFile, decodedFile);
+        if (compareFiles(messageFile, decodedFile))
+            System.out.println("OK: Text with context models decoded in parallel is identical after decoding.");
+        else
+            System.out.println("ERROR: Text with context models decoded in parallel is not identical after decoding.");
+        h = new HuffmanCode();
+        h.setContextModeled(true);
+        roundTrip("Single symbol with context models", h, new HuffmanCode(), new byte[100000]);
+
+        CodecMetrics metrics = new CodecMetrics();
+        h = new HuffmanCode();
+        h.setListener(metrics);
+        roundTrip("Text with metrics", h, h, book);
+        long encoded = Files.size(Paths.get(encodedFile));
+        h.encodeParallel(messageFile, encodedFile);
+        h.decodeParallel(encodedFile, decodedFile);
+        encoded += Files.size(Paths.get(encodedFile));
+        if (metrics.files(Phase.Encode) == 2 && metrics.bytesIn(Phase.Encode) == 2L * book.length
+            && metrics.files(Phase.Decode) == 2 && metrics.bytesOut(Phase.Decode) == 2L * book.length
+            && metrics.blockBytes(Phase.Encode) == 2L * book.length && metrics.blockBytes(Phase.Decode) == 2L * book.length
+            && metrics.bytesOut(Phase.Encode) == encoded && metrics.runs(Phase.Count) == 2)
+            System.out.println("OK: Metrics of text encoded and decoded add up.");
+        else
+            System.out.println("ERROR: Metrics of text encoded and decoded do not add up:\n" + metrics);
+
+        byte[] rare = book.clone();
+        for (int i = 0; i < 16; i++)                                    // a byte in a block or two only
+            rare[i * HuffmanCode.BlockSize + 5] = (byte) (0x80 + i);
+        for (int sampling : new int[] {2, 4, 1000}) {
+            h = new HuffmanCode();
+            h.setSampling(sampling, true);
+            if (roundTrip("Text sampling 1 of " + sampling + " blocks", h, new HuffmanCode(), rare)
+                && !(h.getSamplingLoss() >= 0))
+                System.out.println("ERROR: Sampling loss of " + h.getSamplingLoss() + " is negative.");
+        }
+        h = new HuffmanCode();
+        h.setSampling(4, false);
+        roundTrip("Random file sampling 1 of 4 blocks", h, new HuffmanCode(), random);
+        h = new HuffmanCode();
+        h.setSampling(4, false);
+        roundTrip("Empty file sampling 1 of 4 blocks", h, new HuffmanCode(), new byte[0]);
+
+        byte[] mixed = Arrays.copyOf(book, 6 * HuffmanCode.BlockSize + 777);     // coded blocks,
+        System.arraycopy(random, 0, mixed, HuffmanCode.BlockSize, HuffmanCode.BlockSize);  // a raw one,
+        Arrays.fill(mixed, 3 * HuffmanCode.BlockSize, 4 * HuffmanCode.BlockSize, (byte) 'x');  // a run
+        System.arraycopy(random, 0, mixed, 6 * HuffmanCode.BlockSize, 777);    // and a raw last one
+        for (boolean interleaved : new boolean[] {false, true}) {
+            String streams = interleaved ? " and interleaved streams" : "";
+            h = new HuffmanCode();
+            h.setRawBlocks(true);
+            h.setInterleaved(interleaved);
+            roundTrip("Random file with raw blocks" + streams, h, new HuffmanCode(), random);
+            roundTrip("Empty file with raw blocks" + streams, h, new HuffmanCode(), new byte[0]);
+            roundTrip("Mixed blocks with raw blocks" + streams, h, new HuffmanCode(), mixed);
+            checkRanges("mixed blocks with raw blocks" + streams, new HuffmanCode(), mixed);
+        }
+        h = new HuffmanCode();
+        h.setRawBlocks(true);
+        h.setTable(trained);
+        roundTrip("Mixed blocks with raw blocks and a trained code", h, cached, mixed);
+
+        for (int symbols : new int[] {2, 12, 30, 50}) {                // codes of up to 1 .. 49 bits
+            counts = new Histogram(256);
+            for (int i = 0; i < symbols; i++)
+                counts.set(i, (i < 2) ? 1 : counts.frequency(i - 1) + counts.frequency(i - 2));
+            CodeTable table = new CodeTable(HuffmanLengths.lengths(counts));
+            byte[] message = new byte[100003];
+            Random r = new Random(symbols);
+            for (int i = 0; i < message.length; i++)
+                message[i] = (byte) r.nextInt(symbols);
+            ByteArrayOutputStream each = new ByteArrayOutputStream(), bulk = new ByteArrayOutputStream();
+            BitWriter out = new BitWriter(Channels.newChannel(each));
+            for (int i = 0; i < message.length; i++)
+                out.write(table.code(message[i]), table.length(message[i]));
+            out.flush();
+            out = new BitWriter(Channels.newChannel(bulk));
+            out.write(table, message, 0, 7);                            // unaligned
+            out.write(table, message, 7, message.length - 7);
+            out.flush();
+            if (Arrays.equals(each.toByteArray(), bulk.toByteArray()))
+                System.out.println("OK: Codes of up to " + table.maxLength() + " bits are packed in bulk as one at a time.");
+            else
+                System.out.println("ERROR: Codes of up to " + table.maxLength() + " bits are not packed in bulk as one at a time.");
+        }
+        h = new HuffmanCode();
+        h.encode("abracadabra");
+        byte[] late = repeat("abracadabra".getBytes(), 3 * BitWriter.VectorChunk);
+        late[2 * BitWriter.VectorChunk + 7] = '#';                     // within a chunk of pairs
+        try {
+            new BitWriter(Channels.newChannel(new ByteArrayOutputStream())).write(h.tableEncoding, late, 0, late.length);
+            System.out.println("ERROR: Missing symbol after " + (2 * BitWriter.VectorChunk + 7) + " symbols is written.");
+        } catch (RuntimeException e) {
+            System.out.println("OK: Missing symbol after " + (2 * BitWriter.VectorChunk + 7) + " symbols is rejected (" + e.getMessage() + ").");
+        }
+
+        for (Alphabet alphabet : Alphabet.values()) {
+            h = new HuffmanCode();
+            h.setAlphabet(alphabet);
+            roundTrip(alphabet + " alphabet (text)", h, new HuffmanCode(), book);
+            checkRanges(alphabet + " alphabet (text)", new HuffmanCode(), book);
+            h = new HuffmanCode();
+            h.setAlphabet(alphabet);
+            roundTrip(alphabet + " alphabet (random)", h, new HuffmanCode(), random);
+            checkRanges(alphabet + " alphabet (random)", new HuffmanCode(), random);
+            h = new HuffmanCode();
+            h.setAlphabet(alphabet);
+            roundTrip(alphabet + " alphabet (odd length)", h, new HuffmanCode(), Arrays.copyOf(book, 12345));
+        }
+    }
+
+    /**
+     * Writes a message to a HuffmanOutputStream (some bytes one at a time, the rest in chunks
+     * that are not aligned with its frames), reads it back with a HuffmanInputStream, and tells
+     * whether it is identical
+     *
+     * @param name is the name of the test
+     * @param encoded is the stream into which out writes
+     * @param out is the stream being tested
+     * @param message is the message
+     * @throws IOException
+     */
+    private static boolean streamRoundTrip(String name, ByteArrayOutputStream encoded, HuffmanOutputStream out,
+                                           byte[] message) throws IOException {
+        int n = Math.min(message.length, 100);
+        byte[] decoded;
+        boolean same;
+
+        for (int i = 0; i < n; i++)
+            out.write(message[i]);
+        for (int chunk = 12345; n < message.length; n += chunk)
+            out.write(message, n, Math.min(chunk, message.length - n));
+        out.close();
+        try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(encoded.toByteArray()))) {
+            decoded = in.readAllBytes();
+        }
+        same = Arrays.equals(message, decoded);
+        if (same)
+            System.out.println("OK: " + name + " is identical after streaming.");
+        else
+            System.out.println("ERROR: " + name + " is not identical after streaming.");
+        return same;
+    }
+
+    /**
+     * Encodes a message in memory with the current code of an object, into an array (at an
+     * offset) and into a direct buffer, decodes both, and tells whether they are identical
+     *
+     * @param name is the name of the test
+     * @param h is the object with the code
+     * @param message is the message
+     */
+    private static boolean memoryRoundTrip(String name, HuffmanCode h, byte[] message) {
+        byte[] encoded = new byte[h.maxEncodedSize(message.length) + 5];
+        ByteBuffer direct = ByteBuffer.allocateDirect(h.maxEncodedSize(message.length));
+        ByteBuffer decoded = ByteBuffer.allocate(message.length);
+        int n = h.encode(message, 0, message.length, encoded, 5);
+        boolean same;
+
+        h.decode(ByteBuffer.wrap(encoded, 5, n), decoded);
+        same = Arrays.equals(message, decoded.array());
+        h.encode(ByteBuffer.wrap(message), direct);
+        decoded.clear();
+        Arrays.fill(decoded.array(), (byte) 0);
+        h.decode(direct.flip(), decoded);
+        same &= Arrays.equals(message, decoded.array()) && !direct.hasRemaining();
+        if (same)
+            System.out.println("OK: " + name + " is identical after decoding.");
+        else
+            System.out.println("ERROR: " + name + " is not identical after decoding.");
+        return same;
+    }
+
+    /**
+     * Encodes a tree of files with a BatchEncoder, next to each file and then into a single
+     * directory (where two of them collide), and tells whether every file is identical after
+     * decoding and the collision is reported
+     *
+     * @param text is the message of some files
+     * @param random is the message of another
+     * @throws IOException
+     */
+    private static boolean batchRoundTrip(byte[] text, byte[] random) throws IOException {
+        Path dir = Files.createTempDirectory("test4-batch");
+        Path[] files = {dir.resolve("a.txt"), dir.resolve("b.bin"), dir.resolve("sub/a.txt")};
+        byte[][] messages = {text, random, new byte[0]};
+        BatchEncoder.Report report;
+        boolean same = true;
+
+        Files.createDirectories(dir.resolve("sub"));
+        for (int i = 0; i < files.length; i++)
+            Files.write(files[i], messages[i]);
+        try {
+            report = new BatchEncoder(2).encode(BatchEncoder.list(dir.toString()));
+            for (int i = 0; i < files.length; i++) {
+                new HuffmanCode().decode(files[i] + BatchEncoder.Extension, dir.resolve("decoded").toString());
+                same &= Arrays.equals(messages[i], Files.readAllBytes(dir.resolve("decoded")));
+            }
+            same &= report.errors().isEmpty() && report.files() == files.length;
+            report = new BatchEncoder(2, 1, HuffmanCode::new).encode(Arrays.asList(files), null, dir.resolve("out"));
+            same &= report.errors().size() == 1 && report.files() == files.length - 1    // sub/a.txt
+                    && report.latency(0) > 0;                           // is a.txt, and not encoded
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            delete(dir);
+        }
+        if (same)
+            System.out.println("OK: Batch of files is identical after decoding.");
+        else
+            System.out.println("ERROR: Batch of files is not identical after decoding.");
+        return same;
+    }
+
+    /**
+     * Tells whether the sizes reported by an object that encoded or decoded the encoded file
+     * with a code that comes without frequencies (canonical or pre-trained) are right, and the
+     * ones that need the frequencies are unknown
+     *
+     * @param name is the name of the test
+     * @param h is the object
+     * @param size is the size of the message
+     * @throws IOException
+     */
+    private static boolean checkSizes(String name, HuffmanCode h, long size) throws IOException {
+        boolean same = h.getMessageSize() == size && h.getEncodedFileSize() == Files.size(Paths.get(encodedFile))
+                       && h.getHeaderSize() > 0 && h.getTotalLength() == -1 && h.getMessageEntropy() == -1;
+
+        if (same)
+            System.out.println("OK: Sizes of " + name + " are right.");
+        else
+            System.out.println("ERROR: Sizes of " + name + " are wrong (" + h.getMessageSize() + " bytes, " +
+                               h.getEncodedFileSize() + " encoded).");
+        return same;
+    }
+
+    /**
+     * Decodes some ranges of the encoded file (within a block, across blocks, at the ends)
+     * and tells whether they are those of the message
+     *
+     * @param name is the name of the test
+     * @param decoder is the object that decodes the ranges
+     * @param message is the message encoded in the file
+     * @throws IOException
+     */
+    private static boolean checkRanges(String name, HuffmanCode decoder, byte[] message) throws IOException {
+        int n = message.length;
+        int[][] ranges = {{0, Math.min(n, 10)}, {n / 3, Math.min(n - n / 3, 100000)},
+                          {Math.max(0, n - 7), Math.min(n, 7)}, {n, 0}};    // from, length
+        boolean same = true;
+
+        for (int[] range : ranges)
+            same &= Arrays.equals(decoder.decode(encodedFile, range[0], range[1]),
+                                  Arrays.copyOfRange(message, range[0], range[0] + range[1]));
+        if (same)
+            System.out.println("OK: Ranges of " + name + " are identical after decoding.");
+        else
+            System.out.println("ERROR: Ranges of " + name + " are not identical after decoding.");
+        return same;
+    }
+
+    /**
+     * Tells whether malformed files (empty, truncated at several points, or with a corrupt
+     * version or header) are rejected with an IOException, for every layout of a file
+     *
+     * @param text is the message of the files
+     * @throws IOException
+     */
+    private static boolean malformedFiles(byte[] text) throws IOException {
+        boolean rejected = true;
+
+        Files.write(Paths.get(messageFile), text);
+        for (String layout : new String[] {"Plain", "Canonical", "Indexed"}) {
+            HuffmanCode h = new HuffmanCode();
+            h.setCanonical(layout.equals("Canonical"));
+            if (layout.equals("Indexed"))
+                h.encodeParallel(messageFile, encodedFile);
+            else
+                h.encode(messageFile, encodedFile);
+            byte[] encoded = Files.readAllBytes(Paths.get(encodedFile));
+            byte[] version = encoded.clone();
+            byte[] count = encoded.clone();
+            version[4] = 99;                                            // after the mark, if any
+            Arrays.fill(count, 0, 8, (byte) 0xFF);                      // read as -1 symbols
+            rejected &= rejects(layout + " empty file", new byte[0]);
+            rejected &= rejects(layout + " file of 3 bytes", Arrays.copyOf(encoded, 3));
+            rejected &= rejects(layout + " file with half its header", Arrays.copyOf(encoded, h.getHeaderSize() / 2));
+            rejected &= rejects(layout + " file with just its header", Arrays.copyOf(encoded, h.getHeaderSize()));
+            rejected &= rejects(layout + " file cut in half", Arrays.copyOf(encoded, encoded.length / 2));
+            rejected &= rejects(layout + " file cut by a byte", Arrays.copyOf(encoded, encoded.length - 1));
+            rejected &= rejects(layout + " file with a corrupt version", version);
+            rejected &= rejects(layout + " file with a corrupt count of symbols", count);
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(stream)) {
+            out.write(text);
+        }
+        byte[] half = Arrays.copyOf(stream.toByteArray(), stream.size() / 2);
+        try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(half))) {
+            in.readAllBytes();
+            System.out.println("ERROR: Stream cut in half is read.");
+            rejected = false;
+        } catch (IOException e) {
+            System.out.println("OK: Stream cut in half is rejected (" + e.getMessage() + ").");
+        }
+        return rejected;
+    }
+
+    /**
+     * Writes an encoded file, and tells whether decoding it (sequentially and in parallel)
+     * fails with an IOException
+     *
+     * @param name is the name of the test
+     * @param encoded is the contents of the file
+     * @throws IOException
+     */
+    private static boolean rejects(String name, byte[] encoded) throws IOException {
+        boolean rejected = true;
+
+        Files.write(Paths.get(encodedFile), encoded);
+        for (boolean parallel : new boolean[] {false, true})
+            try {
+                if (parallel)
+                    new HuffmanCode().decodeParallel(encodedFile, decodedFile);
+                else
+                    new HuffmanCode().decode(encodedFile, decodedFile);
+                rejected = false;
+            } catch (IOException e) {
+            }
+        if (rejected)
+            System.out.println("OK: " + name + " is rejected.");
+        else
+            System.out.println("ERROR: " + name + " is decoded.");
+        return rejected;
+    }
+
+    /**
+     * Tells whether the limits of the length of the codes are enforced at their boundaries,
+     * and codes of the longest length (56 bits) are packed and decoded
+     *
+     * @throws IOException
+     */
+    private static boolean boundaryLengths() throws IOException {
+        boolean right = true;
+        HuffmanCode h;
+
+        for (int limit : new int[] {-1, 57})
+            try {
+                new HuffmanCode().setMaxCodeLength(limit);
+                System.out.println("ERROR: Maximum length of " + limit + " bits is accepted.");
+                right = false;
+            } catch (RuntimeException e) {
+                System.out.println("OK: Maximum length of " + limit + " bits is rejected (" + e.getMessage() + ").");
+            }
+        for (int limit : new int[] {0, 28, 29, 56}) {                  // the codes have 29 bits at most
+            h = new HuffmanCode();
+            h.setMaxCodeLength(limit);
+            right &= roundTrip("Long codes limited to " + limit + " bits", h, new HuffmanCode(), fibonacci(30));
+            if (h.tableEncoding.maxLength() != ((limit == 28) ? 28 : 29)) {
+                System.out.println("ERROR: Codes limited to " + limit + " bits have " + h.tableEncoding.maxLength() + " bits.");
+                right = false;
+            }
+        }
+
+        int[] lengths = new int[57];                                    // 1, 2, .., 55, 56, 56 bits
+        for (int i = 0; i < lengths.length; i++)
+            lengths[i] = Math.min(i + 1, 56);
+        CodeTable table = new CodeTable(lengths);
+        byte[] message = new byte[10007];
+        for (int i = 0; i < message.length; i++)
+            message[i] = (byte) (56 - i % 3 - (i % 5) * (i % 7));     // mostly the longest codes
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        BitWriter out = new BitWriter(Channels.newChannel(encoded));
+        out.write(table, message, 0, message.length);
+        out.flush();
+        BitReader in = new BitReader(ByteBuffer.wrap(encoded.toByteArray()));
+        byte[] decoded = new byte[message.length];
+        HuffmanCode.decode(new DecodeTable(table), in, decoded, 0, decoded.length);
+        if (table.maxLength() == 56 && Arrays.equals(message, decoded) && !in.overrun())
+            System.out.println("OK: Codes of 56 bits are identical after decoding.");
+        else {
+            System.out.println("ERROR: Codes of 56 bits are not identical after decoding.");
+            right = false;
+        }
+        return right;
+    }
+
+    /**
+     * Tells whether empty inputs are encoded and decoded by every interface: strings, files
+     * with every kind of code, messages in memory and streams
+     *
+     * @throws IOException
+     */
+    private static boolean emptyInputs() throws IOException {
+        boolean right = true;
+        HuffmanCode h = new HuffmanCode();
+
+        if (h.encode("").isEmpty() && h.getMessageSize() == 0)
+            System.out.println("OK: Empty string is encoded as no bits.");
+        else {
+            System.out.println("ERROR: Empty string is encoded as " + h.encode("").length() + " bits.");
+            right = false;
+        }
+        h = new HuffmanCode();
+        right &= roundTrip("Empty file with plain codes", h, new HuffmanCode(), new byte[0]);
+        right &= checkRanges("an empty file", new HuffmanCode(), new byte[0]);
+        if (h.getMessageSize() != 0 || h.getEncodedFileSize() != Files.size(Paths.get(encodedFile))) {
+            System.out.println("ERROR: Sizes of an empty file are wrong (" + h.getMessageSize() + " bytes, " +
+                               h.getEncodedFileSize() + " encoded).");
+            right = false;
+        }
+        h = new HuffmanCode();
+        h.setCanonical(true);
+        right &= roundTrip("Empty file with canonical codes", h, new HuffmanCode(), new byte[0]);
+        h = new HuffmanCode();
+        h.setTable(TrainedTable.train("abracadabra".getBytes(), 0, 11));
+        right &= roundTrip("Empty file with a trained code", h, h, new byte[0]);
+
+        HuffmanCodec codec = new HuffmanCodec(TrainedTable.train("abracadabra".getBytes(), 0, 11));
+        byte[] encoded = new byte[codec.maxEncodedSize(0)];
+        ByteBuffer decoded = ByteBuffer.allocate(10);
+        int n = codec.encode(new byte[0], 0, 0, encoded, 0);
+        codec.decode(ByteBuffer.wrap(encoded, 0, n), decoded);
+        if (n == encoded.length && decoded.position() == 0)
+            System.out.println("OK: Empty message is identical after decoding with a codec.");
+        else {
+            System.out.println("ERROR: Empty message is not identical after decoding with a codec.");
+            right = false;
+        }
+
+        try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(new byte[0]))) {
+            in.readAllBytes();
+            System.out.println("ERROR: Stream of no bytes is read.");
+            right = false;
+        } catch (IOException e) {
+            System.out.println("OK: Stream of no bytes is rejected (" + e.getMessage() + ").");
+        }
+        return right;
+    }
+
+    /**
+     * Deletes a directory and everything in it
+     *
+     * @param dir is the directory
+     * @throws IOException
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> tree = Files.walk(dir)) {
+            tree.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * Returns a message that repeats a pattern
+     *
+     * @param pattern is the pattern
+     * @param n is the length of the message
+     */
+    private static byte[] repeat(byte[] pattern, int n) {
+        byte[] message = new byte[n];
+
+        for (int i = 0; i < n; i += pattern.length)
+            System.arraycopy(pattern, 0, message, i, Math.min(pattern.length, n - i));
+        return message;
+    }
+
+    /**
+     * Returns a message in which the i-th symbol appears fib(i) times, whose codes are as
+     * long as the symbols are many (longer than the first level of the decoding tables)
+     *
+     * @param symbols is the number of symbols
+     */
+    private static byte[] fibonacci(int symbols) {
+        int[] fib = new int[symbols];
+        int n = 0;
+
+        for (int i = 0; i < symbols; i++)
+            n += fib[i] = (i < 2) ? 1 : fib[i - 1] + fib[i - 2];
+        byte[] message = new byte[n];
+        n = 0;
+        for (int i = 0; i < symbols; i++)
+            for (int k = 0; k < fib[i]; k++)
+                message[n++] = (byte) i;
+        return message;
+    }
+
+    /**
+     * Encodes a message as a file and decodes it, and tells whether it is identical
+     *
+     * @param name is the name of the test
+     * @param encoder is the object that encodes the file, with the settings being tested
+     * @param decoder is the object that decodes it
+     * @param message is the message
+     * @throws IOException
+     */
+    private static boolean roundTrip(String name, HuffmanCode encoder, HuffmanCode decoder, byte[] message) throws IOException {
+        return roundTrip(name, encoder, decoder, message, false);
+    }
+
+    /**
+     * Encodes a message as a file, sequentially or in parallel, and decodes it, and tells
+     * whether it is identical
+     *
+     * @param name is the name of the test
+     * @param encoder is the object that encodes the file, with the settings being tested
+     * @param decoder is the object that decodes it
+     * @param message is the message
+     * @param parallel is whether the file is encoded with encodeParallel()
+     * @throws IOException
+     */
+    private static boolean roundTrip(String name, HuffmanCode encoder, HuffmanCode decoder, byte[] message,
+                                     boolean parallel) throws IOException {
+        boolean same;
+
+        Files.write(Paths.get(messageFile), message);
+        if (parallel)
+            encoder.encodeParallel(messageFile, encodedFile);
+        else
+            encoder.encode(messageFile, encodedFile);
+        decoder.decode(encodedFile, decodedFile);
+        same = compareFiles(messageFile, decodedFile);
+        if (same)
+            System.out.println("OK: " + name + " is identical after decoding.");
+        else
+            System.out.println("ERROR: " + name + " is not identical after decoding.");
+        return same;
+    }
+
+    /**
+     * Runs a streaming test over a synthetic message of several GB (a block repeated over
+     * and over) that is never stored: it is encoded as a file (whose ranges past 2^31 bytes
+     * are decoded, and which is then deleted), and then through a HuffmanOutputStream piped
+     * into a HuffmanInputStream
+     *
+     * @param gigabytes is the size of the message in GB
+     * @throws IOException
+     */
+    private static void Test3(int gigabytes) throws IOException {
+        byte[] pattern = new byte[1 << 24];
+        long size = (long) gigabytes << 30;
+        int repeats = (int) (size / pattern.length);
+        ByteBuffer[] regions = new ByteBuffer[repeats];
+        ByteBuffer region = ByteBuffer.wrap(pattern);
+        Histogram freq = new Histogram(256);
+        FileChannel encoded = FileChannel.open(Paths.get("test3-encoded.dat"), StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        ByteBuffer start = ByteBuffer.allocate(1 << 12);
+        HuffmanCode h = new HuffmanCode();
+        Random random = new Random(1);
+
+        for (int i = 0; i < pattern.length; i++)        // 21 symbols with skewed frequencies
+            pattern[i] = (byte) ('a' + Integer.numberOfTrailingZeros(random.nextInt() | 1 << 20));
+        for (int i = 0; i < repeats; i++)
+            regions[i] = region;
+        freq.add(pattern, 0, pattern.length);
+
+        h.encode(regions, size, encoded);
+        h.printStats();
+        encoded.read(start, 0);
+        Histogram header = h.readHeader(start.flip());
+        boolean same = h.getMessageSize() == size && h.getEncodedFileSize() == encoded.size();
+        for (int c = 0; c < 256; c++)
+            same &= header.frequency(c) == repeats * freq.frequency(c);
+        encoded.close();
+        if (same)
+            System.out.println("OK: Sizes and header are right for " + size + " bytes.");
+        else
+            System.out.println("ERROR: Wrong sizes or header for " + size + " bytes.");
+
+        same = true;
+        for (long from : new long[] {(1L << 31) - 8, (1L << 32) - 8, size - 16}) {
+            if (from + 16 > size)
+                continue;
+            byte[] range = h.decode("test3-encoded.dat", from, 16);
+            for (int k = 0; k < 16; k++)
+                same &= range[k] == pattern[(int) ((from + k) % pattern.length)];
+        }
+        Files.delete(Paths.get("test3-encoded.dat"));
+        if (same)
+            System.out.println("OK: Ranges past 2^31 bytes are identical after decoding.");
+        else
+            System.out.println("ERROR: Ranges past 2^31 bytes are not identical after decoding.");
+
+        PipedOutputStream pipeOut = new PipedOutputStream();
+        PipedInputStream pipeIn = new PipedInputStream(pipeOut, 1 << 20);
+        Thread writer = new Thread(() -> {
+            try (HuffmanOutputStream out = new HuffmanOutputStream(pipeOut, null)) {
+                for (int i = 0; i < repeats; i++)
+                    out.write(pattern);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long n = 0;
+        writer.start();
+        try (HuffmanInputStream in = new HuffmanInputStream(pipeIn)) {
+            byte[] block = new byte[1 << 16];
+            int m;
+            same = true;
+            while ((m = in.read(block)) > 0) {
+                for (int k = 0; k < m; k++)
+                    same &= block[k] == pattern[(int) ((n + k) % pattern.length)];
+                n += m;
+            }
+        }
+        if (same && n == size)
+            System.out.println("OK: Stream is identical after decoding (" + n + " bytes).");
+        else
+            System.out.println("ERROR: Stream is not identical after decoding (" + n + " bytes).");
+    }
+
 
 }
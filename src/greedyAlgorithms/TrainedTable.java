@@ -0,0 +1,183 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+/**
+ * A huffman code trained once from sample data and reused for many messages, so that
+ * neither the frequencies nor the code are computed again for each message, and encoded
+ * files just refer to the code by its fingerprint (a 64-bit hash of the code lengths).
+ *
+ * Every byte counts once more than in the samples, so that any message can be encoded.
+ * Codes are canonical with at most MaxCodeLength bits, and the decoding tables are built
+ * along with the code. A table is saved as a mark ("HUFT") followed by the code lengths in
+ * the format of CanonicalHeader.
+ *
+ * @author guisanpea
+ *
+ */
+public class TrainedTable {
+	static final int MaxCodeLength = 15;	// max. length of an encoding
+	static final int Magic = 0x54465548;	// "HUFT": marks saved tables
+
+	private final CodeTable table;			// the code
+	private final DecodeTable decoder;		// its decoding tables
+	private final long fingerprint;			// hash of the code lengths
+
+	/**
+	 * Creates a table from a code
+	 * @param table is the code (just the lengths of the encodings are used)
+	 * @throws RuntimeException if some byte has no encoding
+	 */
+	public TrainedTable(CodeTable table) throws RuntimeException {
+		if (table.size() < 256)
+			throw new RuntimeException("A pre-trained code must have an encoding for every byte");
+		this.table = new CodeTable(table.lengths());
+		this.decoder = new DecodeTable(this.table);
+		this.fingerprint = fingerprint(this.table);
+	}
+
+	/**
+	 * Trains a table from some sample files
+	 * @param samples are the names of the files
+	 * @return the table
+	 * @throws IOException
+	 */
+	public static TrainedTable train(String... samples) throws IOException {
+		Histogram freq = new Histogram(256);
+		byte[] block = new byte[HuffmanCode.BlockSize];
+
+		for (String sample : samples)
+			try (InputFile in = new InputFile(sample)) {
+				for (ByteBuffer region : in.regions())
+					HuffmanCode.count(region, freq, block);
+			}
+
+		return train(freq);
+	}
+
+	/**
+	 * Trains a table from some sample bytes
+	 * @param sample is an array with the sample
+	 * @param off is the position of the first byte
+	 * @param len is the number of bytes
+	 * @return the table
+	 */
+	public static TrainedTable train(byte[] sample, int off, int len) {
+		Histogram freq = new Histogram(256);
+
+		freq.add(sample, off, len);
+
+		return train(freq);
+	}
+
+	/**
+	 * Returns the code
+	 */
+	public CodeTable table() {
+		return table;
+	}
+
+	/**
+	 * Returns the decoding tables
+	 */
+	public DecodeTable decoder() {
+		return decoder;
+	}
+
+	/**
+	 * Returns the fingerprint of the code
+	 */
+	public long fingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Writes the table
+	 * @param out is the output stream
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		BitWriter bits = new BitWriter(Channels.newChannel(out));
+
+		bits.write(Integer.reverseBytes(Magic) & 0xFFFFFFFFL, 32);	// from LSB to MSB
+		new CanonicalHeader(table, 0).write(bits);
+		bits.flush();
+	}
+
+	/**
+	 * Reads a table
+	 * @param in is the input stream (read to the end)
+	 * @return the table
+	 * @throws IOException if the stream is not a saved table
+	 */
+	public static TrainedTable read(InputStream in) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(in.readAllBytes());
+
+		if (bytes.remaining() < 4 || Integer.reverseBytes(bytes.getInt()) != Magic)
+			throw new IOException("Not a huffman code table");
+
+		return new TrainedTable(CanonicalHeader.read(new BitReader(bytes)).table());
+	}
+
+	/**
+	 * Saves the table to a file
+	 * @param name is the name of the file
+	 * @throws IOException
+	 */
+	public void save(String name) throws IOException {
+		try (OutputStream out = new FileOutputStream(name)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Loads a table from a file
+	 * @param name is the name of the file
+	 * @return the table
+	 * @throws IOException
+	 */
+	public static TrainedTable load(String name) throws IOException {
+		try (InputStream in = new FileInputStream(name)) {
+			return read(in);
+		}
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Builds a table from the frequencies of the samples, counting every byte once more
+	 */
+	private static TrainedTable train(Histogram freq) {
+		for (int c = 0; c < 256; c++)
+			freq.set(c, freq.frequency(c) + 1);
+
+		return new TrainedTable(new CodeTable(PackageMerge.lengths(freq, MaxCodeLength)));
+	}
+
+	/**
+	 * Computes the fingerprint of a code (FNV-1a hash of the length of each encoding)
+	 */
+	private static long fingerprint(CodeTable table) {
+		long h = 0xcbf29ce484222325L;
+
+		for (int c = 0; c < table.alphabetSize(); c++) {
+			h ^= table.contains(c) ? table.length(c) + 1 : 0;
+			h *= 0x100000001b3L;
+		}
+
+		return h;
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Blocks of a message stored in the way that takes less room: each block of BlockSize bytes
+ * (but the last one) is either encoded with the code of the file or, when the code would not
+ * save at least 1/MinSaving of it (e.g., random or already compressed data, or bytes without
+ * an encoding in a pre-trained code), stored as is, or as a single byte if it is a run of it.
+ * The length of the encoding of a block is estimated from the histogram of a sample of it
+ * (1 of every SampleStride chunks of SampleChunk bytes), so blocks stored as is cost little
+ * more than a copy, both to encode and to decode; blocks that turn out longer than estimated
+ * once encoded are stored as is too.
+ *
+ * Each block has its type (1 byte) followed by:
+ * - Raw: its bytes
+ * - Run: the byte repeated
+ * - Coded: its encoding, either as interleaved streams (see InterleavedCoder) or as a single
+ *   bitstream, with its size in bytes (4 bytes, from LSB to MSB) before it and padded with
+ *   "0"s up to a byte boundary
+ *
+ * @author guisanpea
+ *
+ */
+public class TypedBlocks {
+	static final int Raw = 0;					// type of a block stored as is
+	static final int Run = 1;					// type of a block of a single byte repeated
+	static final int Coded = 2;					// type of a block encoded with the code
+	static final int Types = 3;					// number of types
+	static final int MinSaving = 32;			// coded blocks save at least 1/MinSaving of raw ones
+	static final int SizeBytes = HuffmanCode.BytesPerInt;	// size of a single bitstream
+	static final int SampleChunk = 1024;		// bytes per chunk of the sample of a block
+	static final int SampleStride = 4;			// 1 of every SampleStride chunks is sampled
+
+	/**
+	 * Chooses the type of a block from the histogram of a sample of it
+	 * @param block is an array with the bytes, from its first position
+	 * @param n is the number of bytes
+	 * @param counts is a scratch histogram
+	 * @param table is the encoding of each symbol (every byte of the block has one, as codes
+	 * are generated from the whole file, or pre-trained with every byte)
+	 * @return the type (Coded blocks may still be stored raw, see write)
+	 */
+	public static int type(byte[] block, int n, Histogram counts, CodeTable table) {
+		int symbols = 0;
+		long bits = 0, size = 0;
+
+		counts.clear();
+		for (int off = 0; off < n; off += SampleStride * SampleChunk) {
+			int m = Math.min(SampleChunk, n - off);
+			counts.add(block, off, m);
+			size += m;
+		}
+		for (int c = 0; c < 256; c++) {
+			long f = counts.frequency(c);
+			if (f > 0) {
+				bits += f * table.length(c);
+				symbols++;
+			}
+		}
+		if (symbols == 1 && isRun(block, n))
+			return Run;
+		return (bits * n / size + 7) / 8 > n - n / MinSaving ? Raw : Coded;
+	}
+
+	/**
+	 * Writes a block
+	 * @param out is the output stream of bits (at a byte boundary, where it is left)
+	 * @param type is the type of the block (see type)
+	 * @param table is the encoding of each symbol
+	 * @param block is an array with the bytes, from its first position
+	 * @param n is the number of bytes
+	 * @param interleaved is whether coded blocks are interleaved streams
+	 * @param encoded is a scratch array for the encoding (see maxEncodedSize)
+	 * @return the type written (Raw if the encoding turned out not to save enough)
+	 * @throws IOException
+	 */
+	public static int write(BitWriter out, int type, CodeTable table, byte[] block, int n, boolean interleaved,
+							byte[] encoded) throws IOException {
+		int m = 0;
+
+		if (type == Coded) {
+			m = interleaved ? InterleavedCoder.encode(table, block, 0, n, encoded)
+							: encode(table, block, n, encoded);
+			if (m > n - n / MinSaving)
+				type = Raw;
+		}
+		out.write(type, 8);
+		if (type == Raw)
+			out.writeBytes(block, 0, n);
+		else if (type == Run)
+			out.write(block[0] & 0xFF, 8);
+		else
+			out.writeBytes(encoded, 0, m);
+
+		return type;
+	}
+
+	/**
+	 * Returns the size of the scratch array to encode blocks
+	 * @param table is the encoding of each symbol
+	 * @param len is the number of bytes of a block
+	 * @throws RuntimeException if it does not fit in an array
+	 */
+	public static int maxEncodedSize(CodeTable table, int len) throws RuntimeException {
+		return InterleavedCoder.maxEncodedSize(table, len);	// (larger than a single bitstream)
+	}
+
+	/**
+	 * Returns the size (in bytes) of a block in a file
+	 * @param in is the encoded file
+	 * @param position is the position (in bytes) of the block
+	 * @param n is the number of bytes of the original block
+	 * @param interleaved is whether coded blocks are interleaved streams
+	 */
+	public static long size(InputFile in, long position, int n, boolean interleaved) {
+		int type = type(in, position);
+
+		if (type == Raw)
+			return 1 + n;
+		if (type == Run)
+			return 2;
+		if (interleaved)
+			return 1 + InterleavedCoder.size(in, position + 1);
+		return 1 + SizeBytes + (in.read(position + 1, SizeBytes).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the type of a block in a file
+	 * @param in is the encoded file
+	 * @param position is the position (in bytes) of the block
+	 */
+	public static int type(InputFile in, long position) {
+		return in.read(position, 1).get() & 0xFF;
+	}
+
+	/**
+	 * Decodes a block (raw blocks are copied as they are)
+	 * @param in is the encoded file
+	 * @param position is the position (in bytes) of the block
+	 * @param decoder is the decoding table
+	 * @param interleaved is whether coded blocks are interleaved streams
+	 * @param block is the array in which bytes are stored, from its first position
+	 * @param n is the number of bytes
+	 * @param encoded is a scratch array for interleaved streams
+	 * @return the scratch array (either encoded or a larger one)
+	 */
+	public static byte[] decode(InputFile in, long position, DecodeTable decoder, boolean interleaved,
+								byte[] block, int n, byte[] encoded) {
+		int type;
+
+		in.read(position, block, 0, 1);
+		type = block[0] & 0xFF;
+		if (type == Raw)
+			in.read(position + 1, block, 0, n);
+		else if (type == Run) {
+			in.read(position + 1, block, 0, 1);
+			Arrays.fill(block, 1, n, block[0]);
+		}
+		else if (interleaved) {
+			encoded = InterleavedCoder.read(in, position + 1, encoded);
+			InterleavedCoder.decode(decoder, encoded, 0, block, 0, n);
+		}
+		else
+			HuffmanCode.decode(decoder, new BitReader(in.regions(position + 1 + SizeBytes)), block, 0, n);
+
+		return encoded;
+	}
+
+	/**
+	 * Returns the number of blocks of each type, as "n raw, n runs, n coded"
+	 * @param types is the number of blocks of each type
+	 */
+	public static String toString(long[] types) {
+		return types[Raw] + " raw, " + types[Run] + " runs, " + types[Coded] + " coded";
+	}
+
+	//------------------------------------------------------------------------------
+	//
+	// Private methods below
+	//
+	//------------------------------------------------------------------------------
+
+	/**
+	 * Encodes a block as a single bitstream, preceded by its size
+	 * @param table is the encoding of each symbol
+	 * @param src is an array with the bytes, from its first position
+	 * @param n is the number of bytes
+	 * @param dst is the array in which the block is written, from its first position
+	 * @return the number of bytes written
+	 */
+	private static int encode(CodeTable table, byte[] src, int n, byte[] dst) {
+		long bits = 0;								// pending bits, right-aligned
+		int count = 0;								// number of pending bits
+		int p = SizeBytes;
+
+		for (int i = 0; i < n; i++) {
+			int s = src[i] & 0xFF;
+			bits = bits << table.length(s) | table.code(s);
+			for (count += table.length(s); count >= 8; count -= 8)
+				dst[p++] = (byte) (bits >>> (count - 8));
+		}
+		if (count > 0)								// pads the last byte
+			dst[p++] = (byte) (bits << (8 - count));
+		ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN).putInt(0, p - SizeBytes);
+
+		return p;
+	}
+
+	/**
+	 * Returns whether every byte of a block is the same
+	 */
+	private static boolean isRun(byte[] block, int n) {
+		for (int i = 1; i < n; i++)
+			if (block[i] != block[0])
+				return false;
+		return true;
+	}
+}
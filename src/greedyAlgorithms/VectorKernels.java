@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Paths of the encoder written with the (incubating) Vector API, which are only taken when
+ * Vectors.Enabled is set: nothing else may refer to this class, which cannot be loaded
+ * without the module jdk.incubator.vector.
+ * - pairs(): looks up the encoding of pairs of symbols (gathering the entries of a table of
+ *   (code, length) of each byte) and joins each pair into a single code, Longs.length() pairs
+ *   at a time, for BitWriter to pack them a pair at a time.
+ * - frequencies(): merges the interleaved count tables of a Histogram into 64-bit totals,
+ *   Longs.length() symbols at a time.
+ *
+ * @author guisanpea
+ *
+ */
+public class VectorKernels {
+	static final VectorSpecies<Long> Longs = LongVector.SPECIES_256;	// 4 lanes
+	static final VectorSpecies<Integer> Ints = IntVector.SPECIES_128;	// as many lanes
+	static final int LengthBits = 8;			// bits of the length in an entry
+	static final long LengthMask = (1 << LengthBits) - 1;
+	static final long Missing = LengthMask;		// length of a symbol without an encoding
+
+	/**
+	 * Returns whether the platform has vectors as long as the species of these paths (so
+	 * that they are not emulated)
+	 */
+	static boolean supported() {
+		return LongVector.SPECIES_PREFERRED.vectorBitSize() >= Longs.vectorBitSize();
+	}
+
+	/**
+	 * Fills a table with the encoding of each byte as a (code, length) entry: code <<
+	 * LengthBits | length (Missing if the byte has no encoding)
+	 * @param table is the encoding of each symbol (of at most MaxPairLength bits)
+	 * @param entries is an array of 256 entries
+	 */
+	static void entries(CodeTable table, long[] entries) {
+		for (int c = 0; c < 256; c++)
+			entries[c] = table.contains(c) ? table.code(c) << LengthBits | table.length(c) : Missing;
+	}
+
+	/**
+	 * Joins the encoding of each pair of consecutive symbols into a single entry: the code
+	 * of the first one followed by that of the second, and the sum of their lengths
+	 * @param entries are the entries of each byte (see entries())
+	 * @param symbols is an array of bytes
+	 * @param off is the position of the first symbol
+	 * @param pairs is the number of pairs (a multiple of Longs.length())
+	 * @param first is a scratch array with room for the first symbol of each pair
+	 * @param second is a scratch array with room for the second symbol of each pair
+	 * @param joined is the array in which the entry of each pair is stored
+	 * @return whether every symbol has an encoding (otherwise the entries are not valid)
+	 */
+	static boolean pairs(long[] entries, byte[] symbols, int off, int pairs, int[] first, int[] second,
+						 long[] joined) {
+		VectorMask<Long> missing = Longs.maskAll(false);
+
+		for (int j = 0; j < pairs; j++) {				// the indexes of the gathers
+			first[j] = symbols[off + 2 * j] & 0xFF;
+			second[j] = symbols[off + 2 * j + 1] & 0xFF;
+		}
+		for (int j = 0; j < pairs; j += Longs.length()) {
+			LongVector s = LongVector.fromArray(Longs, entries, 0, first, j);
+			LongVector t = LongVector.fromArray(Longs, entries, 0, second, j);
+			LongVector lt = t.and(LengthMask);
+			LongVector ls = s.and(LengthMask);
+			missing = missing.or(ls.eq(Missing)).or(lt.eq(Missing));
+			s.lanewise(VectorOperators.LSHR, LengthBits)				// code of s
+			 .lanewise(VectorOperators.LSHL, lt)						// followed by
+			 .or(t.lanewise(VectorOperators.LSHR, LengthBits))			// that of t
+			 .lanewise(VectorOperators.LSHL, LengthBits)
+			 .or(ls.add(lt))
+			 .intoArray(joined, j);
+		}
+
+		return !missing.anyTrue();
+	}
+
+	/**
+	 * Merges the count tables of a histogram into the frequency of each symbol
+	 * @param counts are the count tables, one after the other (whose sums fit in an int)
+	 * @param lanes is the number of tables
+	 * @param alphabetSize is the number of symbols of each table
+	 * @param totals are the counts already folded, for each symbol
+	 * @param frequencies is the array in which the frequency of each symbol is stored
+	 */
+	static void frequencies(int[] counts, int lanes, int alphabetSize, long[] totals, long[] frequencies) {
+		int c = 0;
+
+		for (; c + Ints.length() <= alphabetSize; c += Ints.length()) {
+			IntVector sum = IntVector.fromArray(Ints, counts, c);
+			for (int l = 1; l < lanes; l++)
+				sum = sum.add(IntVector.fromArray(Ints, counts, l * alphabetSize + c));
+			((LongVector) sum.convertShape(VectorOperators.I2L, Longs, 0))
+				.add(LongVector.fromArray(Longs, totals, c))
+				.intoArray(frequencies, c);
+		}
+		for (; c < alphabetSize; c++) {
+			long f = totals[c];
+			for (int l = 0; l < lanes; l++)
+				f += counts[l * alphabetSize + c];
+			frequencies[c] = f;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ *
+ */
+package greedyAlgorithms;
+
+/**
+ * Selection at runtime of the paths of the encoder written with the Vector API (see
+ * VectorKernels), with the scalar paths as fallback. They are taken when the incubating
+ * module jdk.incubator.vector is resolved (it is not by default: it takes
+ * --add-modules jdk.incubator.vector) and the platform has vectors of at least 256 bits,
+ * unless the property greedyAlgorithms.scalar is set to true.
+ * This class does not refer to the module, so it can be loaded without it.
+ *
+ * @author guisanpea
+ *
+ */
+public class Vectors {
+	static final String Module = "jdk.incubator.vector";
+	static final boolean Enabled = enabled();	// whether the vector paths are taken
+
+	/**
+	 * Returns whether the vector paths can and should be taken
+	 */
+	private static boolean enabled() {
+		if (Boolean.getBoolean("greedyAlgorithms.scalar") || ModuleLayer.boot().findModule(Module).isEmpty())
+			return false;
+		try {
+			return VectorKernels.supported();
+		} catch (LinkageError e) {				// the module is there, but not its classes
+			return false;
+		}
+	}
+}